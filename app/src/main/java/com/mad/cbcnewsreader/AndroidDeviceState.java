@@ -0,0 +1,58 @@
+/**
+ * @file   AndroidDeviceState.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-17
+ * @brief  Network and battery state read from the system
+ */
+
+package com.mad.cbcnewsreader;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+/**
+ * DeviceState backed by ConnectivityManager and PowerManager
+ */
+public class AndroidDeviceState implements DeviceState {
+
+    /**
+     * Connectivity service
+     */
+    private final ConnectivityManager connectivity;
+
+    /**
+     * Power service
+     */
+    private final PowerManager power;
+
+    /**
+     * Creates the state reader. Only the application context is kept.
+     * @param ctx Android context
+     */
+    public AndroidDeviceState(Context ctx) {
+        Context app = ctx.getApplicationContext();
+        connectivity = (ConnectivityManager) app.getSystemService(Context.CONNECTIVITY_SERVICE);
+        power = (PowerManager) app.getSystemService(Context.POWER_SERVICE);
+    }
+
+    /**
+     * Whether the active connection is metered; unknown counts as metered
+     * @return True if metered
+     */
+    @Override
+    public boolean isMetered() {
+        return connectivity == null || connectivity.isActiveNetworkMetered();
+    }
+
+    /**
+     * Whether the battery saver is on, which exists since Lollipop
+     * @return True in power save mode
+     */
+    @Override
+    public boolean isPowerSaveMode() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && power != null && power.isPowerSaveMode();
+    }
+}
@@ -8,8 +8,12 @@
 package com.mad.cbcnewsreader;
 
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.view.View;
+import android.webkit.WebView;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -33,35 +37,168 @@ public class ArticleActivity extends AppCompatActivity implements PicturesDownlo
 
         // Get GUID of article to display
         Intent intent = getIntent();
-        String guid = intent.getStringExtra("guid");
+        final String guid = intent.getStringExtra("guid");
 
-        // Get the news entry
-        entry =  MainActivity.db.getByGuid(guid);
+        // Remember the article was opened, updating unread counters
+        TaskExecutors.database().execute(new Runnable() {
+            @Override
+            public void run() {
+                MainActivity.db.markRead(guid);
+            }
+        }, Priority.VISIBLE);
 
         getSupportActionBar().setTitle("Story");
 
+        // The database is never read on the UI thread, it may be busy with a refresh
+        new LoadArticleTask(guid).executeOnExecutor(TaskExecutors.database().withPriority(Priority.IMMEDIATE));
+    }
+
+    /**
+     * Fills the screen with a loaded article
+     * @param entry The news entry to show
+     */
+    private void ShowArticle(NewsEntry entry) {
+        this.entry = entry;
+
         // Article title
         TextView articleTitle = findViewById(R.id.articleTitle);
         articleTitle.setText(entry.getTitle());
 
-        // Picture
+        // Picture, updated when it gets downloaded
+        PictureDownloader.Initialize(this, MainActivity.db);
+        PictureDownloader downloader = PictureDownloader.getInstance();
+        downloader.AddListener(this, this);
         UpdatePicture();
+        // The user is looking at this picture, fetch it ahead of everything else
+        downloader.RequestPicture(this, entry.getPictureUrl(), Priority.IMMEDIATE);
 
         // Article description
         TextView articleDescription = findViewById(R.id.articleDescription);
         articleDescription.setText(entry.getDescriptionPlaintext());
 
-        // Link to read more
+        // Link to read more, or the saved full story if there is one
         TextView articleReadMore = findViewById(R.id.articleReadMore);
-        articleReadMore.setText(getString(R.string.read_more, entry.getLink()));
+        final ArticleStore store = new ArticleStore(getFilesDir());
+        if (store.has(entry.getGuid())) {
+            articleReadMore.setText(R.string.read_offline);
+            articleReadMore.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    ShowSavedArticle(store);
+                }
+            });
+        } else {
+            articleReadMore.setText(getString(R.string.read_more, entry.getLink()));
+        }
+    }
+
+    /**
+     * Reads the article from the database
+     */
+    private class LoadArticleTask extends AsyncTask<Void, Void, NewsEntry> {
+        /**
+         * GUID of the article
+         */
+        private final String guid;
+
+        /**
+         * Creates the task
+         * @param guid GUID of the article
+         */
+        LoadArticleTask(String guid) {
+            this.guid = guid;
+        }
+
+        /**
+         * Reads the article in background
+         * @param voids Unused
+         * @return News entry, or NULL if it's not stored
+         */
+        @Override
+        protected NewsEntry doInBackground(Void... voids) {
+            return MainActivity.db.getByGuid(guid);
+        }
+
+        /**
+         * Shows the article, unless the screen was closed meanwhile
+         * @param entry News entry, or NULL if it's not stored
+         */
+        @Override
+        protected void onPostExecute(NewsEntry entry) {
+            if (entry == null || isFinishing())
+                return;
+            ShowArticle(entry);
+        }
+    }
+
+    /**
+     * Shows the full story saved on disk, once it's decompressed in background
+     * @param store Store with saved articles
+     */
+    private void ShowSavedArticle(ArticleStore store) {
+        new LoadSavedArticleTask(store, entry.getGuid())
+                .executeOnExecutor(TaskExecutors.decode().withPriority(Priority.IMMEDIATE));
+    }
+
+    /**
+     * Reads and decompresses a saved story
+     */
+    private class LoadSavedArticleTask extends AsyncTask<Void, Void, String> {
+        /**
+         * Store with saved articles
+         */
+        private final ArticleStore store;
+
+        /**
+         * GUID of the article
+         */
+        private final String guid;
+
+        /**
+         * Creates the task
+         * @param store Store with saved articles
+         * @param guid GUID of the article
+         */
+        LoadSavedArticleTask(ArticleStore store, String guid) {
+            this.store = store;
+            this.guid = guid;
+        }
+
+        /**
+         * Decompresses the page in background
+         * @param voids Unused
+         * @return Page HTML, or NULL if it can't be read
+         */
+        @Override
+        protected String doInBackground(Void... voids) {
+            return store.read(guid);
+        }
+
+        /**
+         * Shows the page instead of the link, unless the screen was closed meanwhile
+         * @param html Page HTML, or NULL if it can't be read
+         */
+        @Override
+        protected void onPostExecute(String html) {
+            if (html == null || isFinishing())
+                return;
+            WebView articleWeb = findViewById(R.id.articleWeb);
+            articleWeb.loadDataWithBaseURL(entry.getLink(), html, "text/html", "UTF-8", null);
+            articleWeb.setVisibility(View.VISIBLE);
+            findViewById(R.id.articleReadMore).setVisibility(View.GONE);
+        }
     }
 
     /**
-     * Updates the article image
+     * Updates the article image, showing the thumbnail until the original is loaded
      */
     private void UpdatePicture() {
+        PictureDownloader downloader = PictureDownloader.getInstance();
+        Bitmap picture = downloader.GetFullBitmap(entry.getPictureUrl());
+        if (picture == null)
+            picture = downloader.GetBitmap(entry.getPictureUrl());
         ImageView articleImage = findViewById(R.id.articleImage);
-        articleImage.setImageBitmap(PictureDownloader.getInstance().GetBitmap(entry.getPictureUrl()));
+        articleImage.setImageBitmap(picture);
     }
 
     /**
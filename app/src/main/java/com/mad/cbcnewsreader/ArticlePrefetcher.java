@@ -0,0 +1,196 @@
+/**
+ * @file   ArticlePrefetcher.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-10
+ * @brief  Downloads full articles for offline reading
+ */
+
+package com.mad.cbcnewsreader;
+
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Background task which saves the full pages of new articles into the ArticleStore,
+ * until the byte budget of the run is spent. Pages of articles whose content
+ * changed are deleted first, so they're downloaded again.
+ * Only one run is in flight; a run started meanwhile waits for it, so runs
+ * don't download the same pages or delete what the other one is writing.
+ */
+public class ArticlePrefetcher extends AsyncTask<Void, Void, Integer> {
+
+    /**
+     * Connect and read timeout in milliseconds
+     */
+    private static final int TIMEOUT_MS = 15000;
+
+    /**
+     * Run in flight, NULL if none. Used from the UI thread only.
+     */
+    private static ArticlePrefetcher running;
+
+    /**
+     * Run waiting for the one in flight, NULL if none. Used from the UI thread only.
+     */
+    private static ArticlePrefetcher waiting;
+
+    /**
+     * Store to save pages in
+     */
+    private ArticleStore store;
+
+    /**
+     * GUIDs of articles whose saved pages are out of date
+     */
+    private HashSet<String> outdated;
+
+    /**
+     * Articles to download, most important first
+     */
+    private List<NewsEntry> news;
+
+    /**
+     * Maximum uncompressed bytes to download in this run
+     */
+    private long budgetBytes;
+
+    /**
+     * Maximum uncompressed size of a single page
+     */
+    private long maxPageBytes;
+
+    /**
+     * Creates the prefetcher
+     * @param store Store to save pages in
+     * @param news Articles to download, most important first
+     * @param outdated GUIDs of articles whose saved pages are out of date
+     * @param budgetBytes Maximum bytes to download in this run
+     * @param maxPageBytes Maximum size of a single page
+     */
+    ArticlePrefetcher(ArticleStore store, List<NewsEntry> news, Collection<String> outdated,
+                      long budgetBytes, long maxPageBytes) {
+        this.store = store;
+        this.news = new ArrayList<>(news);
+        this.outdated = new HashSet<>(outdated);
+        this.budgetBytes = budgetBytes;
+        this.maxPageBytes = maxPageBytes;
+    }
+
+    /**
+     * Starts a run, or queues it until the run in flight is done.
+     * A queued run replaces the one queued before, taking over its outdated pages.
+     * Must be called from the UI thread.
+     * @param prefetcher Run to start
+     */
+    public static void enqueue(ArticlePrefetcher prefetcher) {
+        if (running != null) {
+            if (waiting != null)
+                prefetcher.outdated.addAll(waiting.outdated);
+            waiting = prefetcher;
+            return;
+        }
+        running = prefetcher;
+        prefetcher.executeOnExecutor(TaskExecutors.network().withPriority(Priority.BACKGROUND));
+    }
+
+    /**
+     * Starts the queued run once this one is done
+     */
+    private void startWaiting() {
+        if (running != this)
+            return;
+        running = null;
+        ArticlePrefetcher next = waiting;
+        waiting = null;
+        if (next != null)
+            enqueue(next);
+    }
+
+    /**
+     * Downloads pages in background
+     * @param voids Unused
+     * @return Number of pages saved
+     */
+    @Override
+    protected Integer doInBackground(Void... voids) {
+        store.remove(outdated);
+
+        int saved = 0;
+        long remaining = budgetBytes;
+        for (NewsEntry entry: news) {
+            if (isCancelled() || remaining <= 0)
+                break;
+            if (entry.getGuid() == null || entry.getLink() == null || store.has(entry.getGuid()))
+                continue;
+
+            long size = download(entry, Math.min(maxPageBytes, remaining));
+            if (size > 0) {
+                remaining -= size;
+                saved++;
+            }
+        }
+
+        Log.i(MainActivity.LOG_TAG, "Saved " + saved + " articles for offline reading");
+        return saved;
+    }
+
+    /**
+     * Starts the queued run
+     * @param saved Number of pages saved
+     */
+    @Override
+    protected void onPostExecute(Integer saved) {
+        startWaiting();
+    }
+
+    /**
+     * Starts the queued run
+     * @param saved Number of pages saved, NULL if cancelled before the end
+     */
+    @Override
+    protected void onCancelled(Integer saved) {
+        startWaiting();
+    }
+
+    /**
+     * Downloads a single page into the store
+     * @param entry Article to download
+     * @param maxBytes Maximum size of the page
+     * @return Bytes downloaded, or -1 on failure
+     */
+    private long download(NewsEntry entry, long maxBytes) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(entry.getLink()).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+                return -1;
+            // Don't start on pages that are known to be too big
+            if (connection.getContentLength() > maxBytes)
+                return -1;
+
+            InputStream input = connection.getInputStream();
+            try {
+                return store.save(entry.getGuid(), input, maxBytes);
+            } finally {
+                input.close();
+            }
+        } catch (IOException | ClassCastException e) {
+            e.printStackTrace();
+            return -1;
+        } finally {
+            if (connection != null)
+                connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * @file   ArticleStore.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-10
+ * @brief  Compressed on-disk storage of full article pages
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps full article HTML gzip-compressed on disk, one file per article GUID
+ */
+public class ArticleStore {
+
+    /**
+     * Name of the store directory inside the files directory
+     */
+    public static final String DIR_NAME = "articles";
+
+    /**
+     * Suffix of stored pages
+     */
+    private static final String SUFFIX = ".html.gz";
+
+    /**
+     * Encoding of stored pages
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Directory with stored pages
+     */
+    private final File dir;
+
+    /**
+     * Creates the store
+     * @param filesDir Application files directory
+     */
+    public ArticleStore(File filesDir) {
+        this.dir = new File(filesDir, DIR_NAME);
+        dir.mkdirs();
+    }
+
+    /**
+     * Converts article GUID to a file name
+     * @param guid Article GUID
+     * @return File of the stored page
+     */
+    private File guidToFile(String guid) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(guid.getBytes(UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (byte byt : md.digest())
+                result.append(Integer.toString((byt & 0xff) + 0x100, 16).substring(1));
+            return new File(dir, result + SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks whether the article page is stored
+     * @param guid Article GUID
+     * @return True if the page can be read offline
+     */
+    public boolean has(String guid) {
+        return guid != null && guidToFile(guid).isFile();
+    }
+
+    /**
+     * Compresses and stores a page, at most maxBytes of it.
+     * Pages larger than that are dropped rather than stored truncated.
+     * @param guid Article GUID
+     * @param input Page contents, not closed
+     * @param maxBytes Maximum uncompressed page size
+     * @return Uncompressed bytes read, or -1 if the page wasn't stored
+     * @throws IOException If reading the page or writing the file failed
+     */
+    public long save(String guid, InputStream input, long maxBytes) throws IOException {
+        File target = guidToFile(guid);
+        File tmp = new File(target.getPath() + ".tmp");
+        long total = 0;
+        boolean complete = false;
+        try {
+            OutputStream output = new GZIPOutputStream(new FileOutputStream(tmp));
+            try {
+                byte[] data = new byte[8192];
+                int count;
+                while ((count = input.read(data)) != -1) {
+                    total += count;
+                    if (total > maxBytes)
+                        break;
+                    output.write(data, 0, count);
+                }
+            } finally {
+                output.close();
+            }
+            complete = total <= maxBytes && tmp.renameTo(target);
+        } finally {
+            if (!complete)
+                tmp.delete();
+        }
+        return complete ? total : -1;
+    }
+
+    /**
+     * Reads a stored page
+     * @param guid Article GUID
+     * @return Page HTML, or NULL if it isn't stored
+     */
+    public String read(String guid) {
+        if (!has(guid))
+            return null;
+        try {
+            InputStream input = new GZIPInputStream(new FileInputStream(guidToFile(guid)));
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] data = new byte[8192];
+                int count;
+                while ((count = input.read(data)) != -1)
+                    output.write(data, 0, count);
+                return new String(output.toByteArray(), UTF_8);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the pages of some articles
+     * @param guids Article GUIDs
+     * @return Number of pages deleted
+     */
+    public int remove(Collection<String> guids) {
+        int deleted = 0;
+        for (String guid: guids) {
+            if (guid != null && guidToFile(guid).delete())
+                deleted++;
+        }
+        return deleted;
+    }
+}
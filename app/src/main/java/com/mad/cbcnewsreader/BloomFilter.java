@@ -0,0 +1,156 @@
+/**
+ * @file   BloomFilter.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-16
+ * @brief  Compact set of strings with false positives
+ */
+
+package com.mad.cbcnewsreader;
+
+/**
+ * Bloom filter of strings. A miss is definite, a hit may be a false positive
+ * at about the configured rate while no more than the expected number of
+ * strings is added. Strings can't be removed; a removed string only adds
+ * to the false positives until the filter is rebuilt.
+ */
+public class BloomFilter {
+
+    /**
+     * Bits of the filter
+     */
+    private final long[] bits;
+
+    /**
+     * Number of bits
+     */
+    private final long bitCount;
+
+    /**
+     * Number of bits set per string
+     */
+    private final int hashCount;
+
+    /**
+     * Number of strings the filter is sized for
+     */
+    private final int capacity;
+
+    /**
+     * Number of strings added, repeats included
+     */
+    private int count;
+
+    /**
+     * Creates a filter sized for the given number of strings and false positive rate
+     * @param capacity Expected number of strings
+     * @param falsePositiveRate Wanted share of false positives, between 0 and 1
+     */
+    public BloomFilter(int capacity, double falsePositiveRate) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+
+        // m = -n ln(p) / ln(2)^2, k = m / n ln(2)
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        this.bits = new long[(int) (m / 64)];
+        this.bitCount = m;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / capacity * ln2));
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a string
+     * @param value String to add
+     */
+    public void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        count++;
+    }
+
+    /**
+     * Checks whether a string may have been added
+     * @param value String to check
+     * @return False if the string was definitely not added
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether more strings were added than the filter is sized for,
+     * after which false positives grow past the configured rate
+     * @return True if the filter should be rebuilt larger
+     */
+    public boolean isFull() {
+        return count > capacity;
+    }
+
+    /**
+     * Number of strings added
+     * @return Count of add() calls
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Number of strings the filter is sized for
+     * @return Capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Size of the filter in memory
+     * @return Bytes used by the bits
+     */
+    public int getSizeBytes() {
+        return bits.length * 8;
+    }
+
+    /**
+     * Number of bits set per string
+     * @return Hash function count
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 64-bit FNV-1a of the characters, finished with the MurmurHash3 mixer
+     * so both halves can serve as independent hashes
+     * @param value String to hash
+     * @return Hash
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
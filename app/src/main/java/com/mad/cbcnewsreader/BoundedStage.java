@@ -0,0 +1,189 @@
+/**
+ * @file   BoundedStage.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-19
+ * @brief  Pipeline stage with a bounded backlog
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.util.PriorityQueue;
+
+/**
+ * One stage of a pipeline, running its work on a pool with at most a fixed
+ * number of items queued or running. Work handed to a full stage is held in
+ * the stage's overflow and queued on the pool as items are done, so a fast
+ * stage never parks a thread of its own pool waiting for a slow one, and the
+ * pool stays free for urgent work such as a refresh. The slow stage's pool
+ * queue doesn't grow past the backlog either, so urgent work queued there
+ * isn't stuck behind a long batch.
+ * Can be submitted to from any thread.
+ */
+public class BoundedStage {
+
+    /**
+     * Work waiting for a place in the backlog
+     */
+    private static class Pending implements Comparable<Pending> {
+        /**
+         * Work to run
+         */
+        final Runnable work;
+
+        /**
+         * Priority of the work
+         */
+        final Priority priority;
+
+        /**
+         * Submission order, keeps FIFO order within a priority
+         */
+        final long sequence;
+
+        /**
+         * Creates the entry
+         * @param work Work to run
+         * @param priority Priority of the work
+         * @param sequence Submission order
+         */
+        Pending(Runnable work, Priority priority, long sequence) {
+            this.work = work;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Orders by priority, then by submission
+         * @param o Other entry
+         * @return Comparable result
+         */
+        @Override
+        public int compareTo(Pending o) {
+            int result = priority.compareTo(o.priority);
+            if (result != 0)
+                return result;
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Pool running the work
+     */
+    private final PriorityExecutor executor;
+
+    /**
+     * Size of the backlog
+     */
+    private final int capacity;
+
+    /**
+     * Number of items queued on the pool or running.
+     * Guarded by overflow.
+     */
+    private int backlog;
+
+    /**
+     * Work handed over while the backlog was full, most urgent first
+     */
+    private final PriorityQueue<Pending> overflow = new PriorityQueue<>();
+
+    /**
+     * Submission counter.
+     * Guarded by overflow.
+     */
+    private long sequence;
+
+    /**
+     * Creates the stage
+     * @param executor Pool running the work
+     * @param capacity Number of items queued or running at most
+     */
+    public BoundedStage(PriorityExecutor executor, int capacity) {
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues work on the pool, or holds it in the overflow if the backlog is full.
+     * Never waits.
+     * @param work Work to run
+     * @param priority Priority of the work on the pool
+     */
+    public void submit(Runnable work, Priority priority) {
+        synchronized (overflow) {
+            if (backlog == capacity) {
+                overflow.add(new Pending(work, priority, sequence++));
+                return;
+            }
+            backlog++;
+        }
+        queue(work, priority);
+    }
+
+    /**
+     * Queues work which has a place in the backlog
+     * @param work Work to run
+     * @param priority Priority of the work on the pool
+     */
+    private void queue(final Runnable work, Priority priority) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        work.run();
+                    } finally {
+                        done();
+                    }
+                }
+            }, priority);
+        } catch (RuntimeException e) {
+            // Rejected by the pool
+            done();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the place of a finished item to the most urgent overflow, if any
+     */
+    private void done() {
+        Pending next;
+        synchronized (overflow) {
+            next = overflow.poll();
+            if (next == null) {
+                backlog--;
+                return;
+            }
+        }
+        queue(next.work, next.priority);
+    }
+
+    /**
+     * Capacity getter
+     * @return Number of items queued or running at most
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Backlog getter
+     * @return Number of items queued or running now
+     */
+    public int getBacklog() {
+        synchronized (overflow) {
+            return backlog;
+        }
+    }
+
+    /**
+     * Overflow getter
+     * @return Number of items waiting for a place in the backlog
+     */
+    public int getOverflow() {
+        synchronized (overflow) {
+            return overflow.size();
+        }
+    }
+}
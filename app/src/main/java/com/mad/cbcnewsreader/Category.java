@@ -0,0 +1,65 @@
+/**
+ * @file   Category.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-11
+ * @brief  A news section
+ */
+
+package com.mad.cbcnewsreader;
+
+/**
+ * News category (section) stored in the categories table
+ */
+public class Category {
+
+    /**
+     * Primary key of the category
+     */
+    private long id;
+
+    /**
+     * Category name as it appears in the feed
+     */
+    private String name;
+
+    /**
+     * Number of unread articles in the category
+     */
+    private int unreadCount;
+
+    /**
+     * Creates a category
+     * @param id Primary key
+     * @param name Category name
+     * @param unreadCount Number of unread articles
+     */
+    public Category(long id, String name, int unreadCount) {
+        this.id = id;
+        this.name = name;
+        this.unreadCount = unreadCount;
+    }
+
+    /**
+     * ID getter
+     * @return Primary key
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Name getter
+     * @return Category name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Unread count getter
+     * @return Number of unread articles in the category
+     */
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+}
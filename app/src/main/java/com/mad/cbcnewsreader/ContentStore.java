@@ -0,0 +1,242 @@
+/**
+ * @file   ContentStore.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-19
+ * @brief  Content-addressed pictures with names mapped onto them
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Content-addressed layer over a PictureStore. Pictures are kept once per
+ * distinct content, keyed by the SHA-256 of their bytes, together with a
+ * picture derived from them such as a thumbnail. Names, like the keys of
+ * picture URLs, are linked to content, so the same picture served under
+ * several URLs is stored once. Content no name links to any more is removed
+ * by removeUnreferenced().
+ * Methods are synchronized; callers lock the object to run several in a row.
+ */
+public class ContentStore {
+
+    /**
+     * Store key prefix of content
+     */
+    private static final String CONTENT_PREFIX = "c/";
+
+    /**
+     * Store key prefix of pictures derived from content
+     */
+    private static final String DERIVED_PREFIX = "d/";
+
+    /**
+     * Store key prefix of links from names to content
+     */
+    private static final String LINK_PREFIX = "n/";
+
+    /**
+     * Encoding of content keys in links
+     */
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * Underlying store
+     */
+    private final PictureStore store;
+
+    /**
+     * Creates the layer
+     * @param store Store to keep the pictures in, may hold other keys too
+     */
+    public ContentStore(PictureStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Computes the key of content
+     * @param data Content
+     * @return Hex SHA-256 of the content
+     */
+    public static String contentKey(byte[] data) {
+        return contentKey(data, data.length);
+    }
+
+    /**
+     * Computes the key of content at the start of an array
+     * @param data Array starting with the content
+     * @param length Length of the content
+     * @return Hex SHA-256 of the content
+     */
+    public static String contentKey(byte[] data, int length) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(data, 0, length);
+            StringBuilder result = new StringBuilder();
+            for (byte byt : md.digest())
+                result.append(Integer.toString((byt & 0xff) + 0x100, 16).substring(1));
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stores content unless it's stored already
+     * @param contentKey Key of the content, from contentKey()
+     * @param data Content
+     * @return True if written, false if the same content was there
+     * @throws IOException If writing failed
+     */
+    public synchronized boolean putContent(String contentKey, byte[] data) throws IOException {
+        return putContent(contentKey, data, data.length);
+    }
+
+    /**
+     * Stores content at the start of an array unless it's stored already
+     * @param contentKey Key of the content, from contentKey()
+     * @param data Array starting with the content
+     * @param length Length of the content
+     * @return True if written, false if the same content was there
+     * @throws IOException If writing failed
+     */
+    public synchronized boolean putContent(String contentKey, byte[] data, int length) throws IOException {
+        if (store.contains(CONTENT_PREFIX + contentKey))
+            return false;
+        store.put(CONTENT_PREFIX + contentKey, data, 0, length);
+        return true;
+    }
+
+    /**
+     * Reads content
+     * @param contentKey Key of the content
+     * @return Content, or NULL if not stored
+     * @throws IOException If reading failed
+     */
+    public byte[] readContent(String contentKey) throws IOException {
+        return store.read(CONTENT_PREFIX + contentKey);
+    }
+
+    /**
+     * Stores the picture derived from content, replacing the previous one
+     * @param contentKey Key of the content
+     * @param data Derived picture
+     * @throws IOException If writing failed
+     */
+    public synchronized void putDerived(String contentKey, byte[] data) throws IOException {
+        store.put(DERIVED_PREFIX + contentKey, data);
+    }
+
+    /**
+     * Checks whether content and its derived picture are stored
+     * @param contentKey Key of the content
+     * @return True if both are there
+     */
+    public synchronized boolean hasDerived(String contentKey) {
+        return store.contains(CONTENT_PREFIX + contentKey) && store.contains(DERIVED_PREFIX + contentKey);
+    }
+
+    /**
+     * Reads the picture derived from content
+     * @param contentKey Key of the content
+     * @return Derived picture, or NULL if not stored
+     * @throws IOException If reading failed
+     */
+    public byte[] readDerived(String contentKey) throws IOException {
+        return store.read(DERIVED_PREFIX + contentKey);
+    }
+
+    /**
+     * Removes content and its derived picture, whichever names link to it
+     * @param contentKey Key of the content
+     * @throws IOException If writing failed
+     */
+    public synchronized void removeContent(String contentKey) throws IOException {
+        store.remove(CONTENT_PREFIX + contentKey);
+        store.remove(DERIVED_PREFIX + contentKey);
+    }
+
+    /**
+     * Links a name to content, replacing its previous link
+     * @param name Name, such as the key of a URL
+     * @param contentKey Key of stored content
+     * @throws IOException If writing failed
+     */
+    public synchronized void link(String name, String contentKey) throws IOException {
+        store.put(LINK_PREFIX + name, contentKey.getBytes(US_ASCII));
+    }
+
+    /**
+     * Checks whether a name is linked, without reading the link
+     * @param name Name to check
+     * @return True if linked
+     */
+    public synchronized boolean isLinked(String name) {
+        return store.contains(LINK_PREFIX + name);
+    }
+
+    /**
+     * Finds the content a name links to
+     * @param name Name to look up
+     * @return Key of the content, or NULL if the name isn't linked
+     * @throws IOException If reading failed
+     */
+    public String resolve(String name) throws IOException {
+        byte[] link = store.read(LINK_PREFIX + name);
+        return link == null ? null : new String(link, US_ASCII);
+    }
+
+    /**
+     * Removes the link of a name, the content stays until removeUnreferenced()
+     * @param name Name to unlink
+     * @throws IOException If writing failed
+     */
+    public synchronized void unlink(String name) throws IOException {
+        store.remove(LINK_PREFIX + name);
+    }
+
+    /**
+     * Lists linked names
+     * @return Names
+     */
+    public synchronized ArrayList<String> names() {
+        ArrayList<String> names = new ArrayList<>();
+        for (String key: store.keys()) {
+            if (key.startsWith(LINK_PREFIX))
+                names.add(key.substring(LINK_PREFIX.length()));
+        }
+        return names;
+    }
+
+    /**
+     * Removes content and derived pictures no name links to
+     * @return Number of contents removed
+     * @throws IOException If reading links or writing failed
+     */
+    public synchronized int removeUnreferenced() throws IOException {
+        HashSet<String> referenced = new HashSet<>();
+        for (String name: names())
+            referenced.add(resolve(name));
+
+        HashSet<String> unreferenced = new HashSet<>();
+        for (String key: store.keys()) {
+            String contentKey;
+            if (key.startsWith(CONTENT_PREFIX))
+                contentKey = key.substring(CONTENT_PREFIX.length());
+            else if (key.startsWith(DERIVED_PREFIX))
+                contentKey = key.substring(DERIVED_PREFIX.length());
+            else
+                continue;
+            if (!referenced.contains(contentKey))
+                unreferenced.add(contentKey);
+        }
+        for (String contentKey: unreferenced)
+            removeContent(contentKey);
+        return unreferenced.size();
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * @file   DescriptionCodec.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-19
+ * @brief  Deflate compression of stored article descriptions
+ */
+
+package com.mad.cbcnewsreader;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses article descriptions for the database. Compressed descriptions
+ * are stored as BLOBs in zlib format, whose checksum catches damaged rows;
+ * descriptions which don't get smaller stay TEXT, so readers tell them apart
+ * by the column type.
+ */
+public class DescriptionCodec {
+
+    /**
+     * Default compression level. Descriptions are written once and read
+     * only when an article is opened, so the smallest output is worth it.
+     */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_COMPRESSION;
+
+    /**
+     * Encoding of descriptions
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Not instantiated
+     */
+    private DescriptionCodec() {
+    }
+
+    /**
+     * Compresses a description
+     * @param text Description, may be NULL
+     * @param level Deflate level from 1 to 9, Deflater.NO_COMPRESSION to store text as is
+     * @return Compressed description, or NULL if it should be stored as text
+     */
+    public static byte[] compress(String text, int level) {
+        if (text == null || level == Deflater.NO_COMPRESSION)
+            return null;
+        byte[] input = text.getBytes(UTF_8);
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            // Output as large as the input is of no use
+            byte[] output = new byte[input.length];
+            int length = 0;
+            while (!deflater.finished() && length < output.length)
+                length += deflater.deflate(output, length, output.length - length);
+            if (!deflater.finished())
+                return null;
+            byte[] result = new byte[length];
+            System.arraycopy(output, 0, result, 0, length);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses a description
+     * @param data Compressed description
+     * @return Description, or NULL if the data is damaged
+     */
+    public static String decompress(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    return null;
+                output.write(buffer, 0, count);
+            }
+            return new String(output.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            Log.w(MainActivity.LOG_TAG, "Description not decompressed: " + e.getMessage());
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+}
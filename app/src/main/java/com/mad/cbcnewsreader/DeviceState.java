@@ -0,0 +1,26 @@
+/**
+ * @file   DeviceState.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-17
+ * @brief  Interface to read network and battery state.
+ */
+
+package com.mad.cbcnewsreader;
+
+/**
+ * Network and battery state download policies are based on.
+ * Implemented by AndroidDeviceState, and by fakes in tests.
+ */
+public interface DeviceState {
+    /**
+     * Whether the active connection is billed by traffic, like mobile data
+     * @return True if metered
+     */
+    boolean isMetered();
+
+    /**
+     * Whether the battery saver is on
+     * @return True in power save mode
+     */
+    boolean isPowerSaveMode();
+}
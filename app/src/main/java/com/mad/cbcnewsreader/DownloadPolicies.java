@@ -0,0 +1,76 @@
+/**
+ * @file   DownloadPolicies.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-17
+ * @brief  Current download policy, shared by all downloads
+ */
+
+package com.mad.cbcnewsreader;
+
+/**
+ * Provides the DownloadPolicy for the current device state to NewsUpdater,
+ * PictureDownloader and the prefetchers. The state is read at most once per
+ * STATE_TTL_MS, as scrolling asks for the policy on every row change.
+ * The concurrency of the network pool follows the policy.
+ */
+public final class DownloadPolicies {
+
+    /**
+     * How long a read device state is trusted
+     */
+    private static final long STATE_TTL_MS = 5000;
+
+    /**
+     * Source of the device state, NULL until set
+     */
+    private static DeviceState state;
+
+    /**
+     * Policy of the last read state
+     */
+    private static DownloadPolicy policy = DownloadPolicy.UNMETERED;
+
+    /**
+     * When the state was last read, in System.nanoTime() terms
+     */
+    private static long readAt;
+
+    /**
+     * Whether the state was read yet
+     */
+    private static boolean read;
+
+    /**
+     * Not instantiated
+     */
+    private DownloadPolicies() {
+
+    }
+
+    /**
+     * Sets where the device state comes from, fakes can be set by tests
+     * @param deviceState Network and battery state source
+     */
+    public static synchronized void setDeviceState(DeviceState deviceState) {
+        state = deviceState;
+        read = false;
+    }
+
+    /**
+     * Returns the policy for the current device state
+     * @return Policy to follow, the unmetered one until a state source is set
+     */
+    public static synchronized DownloadPolicy current() {
+        long now = System.nanoTime();
+        if (state != null && (!read || now - readAt > STATE_TTL_MS * 1000000)) {
+            read = true;
+            readAt = now;
+            DownloadPolicy next = DownloadPolicy.forState(state);
+            if (next != policy) {
+                policy = next;
+                TaskExecutors.network().setThreads(policy.getNetworkThreads());
+            }
+        }
+        return policy;
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * @file   DownloadPolicy.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-17
+ * @brief  How much to download for the current network and battery state
+ */
+
+package com.mad.cbcnewsreader;
+
+/**
+ * Download limits for one network and battery state.
+ * On an unmetered connection everything is downloaded eagerly; on a metered
+ * one only what is on screen or close to it; in power save mode the radio
+ * is kept busy as little as possible.
+ */
+public class DownloadPolicy {
+
+    /**
+     * Policy of an unmetered connection with normal power
+     */
+    public static final DownloadPolicy UNMETERED =
+            new DownloadPolicy(3, 5, 20, 2, true, 75, 4 * 1024 * 1024);
+
+    /**
+     * Policy of a metered connection
+     */
+    public static final DownloadPolicy METERED =
+            new DownloadPolicy(2, 2, 6, 1, false, 60, 0);
+
+    /**
+     * Policy of power save mode, on any connection
+     */
+    public static final DownloadPolicy POWER_SAVE =
+            new DownloadPolicy(1, 1, 2, 0, false, 50, 0);
+
+    /**
+     * Number of parallel network downloads
+     */
+    private final int networkThreads;
+
+    /**
+     * Most rows prefetched ahead of the screen while scrolling slowly
+     */
+    private final int prefetchAheadRows;
+
+    /**
+     * Most rows prefetched ahead of the screen while flinging
+     */
+    private final int prefetchMaxAheadRows;
+
+    /**
+     * Most rows kept prefetched behind the screen
+     */
+    private final int prefetchBehindRows;
+
+    /**
+     * Whether pictures of a refresh are downloaded before they are shown
+     */
+    private final boolean backgroundPictures;
+
+    /**
+     * WebP quality of thumbnails
+     */
+    private final int thumbnailQuality;
+
+    /**
+     * Bytes of full articles saved for offline reading per refresh
+     */
+    private final long articlePrefetchBytes;
+
+    /**
+     * Creates a policy
+     * @param networkThreads Number of parallel network downloads
+     * @param prefetchAheadRows Rows prefetched ahead while scrolling slowly
+     * @param prefetchMaxAheadRows Rows prefetched ahead while flinging
+     * @param prefetchBehindRows Rows kept prefetched behind
+     * @param backgroundPictures Whether pictures of a refresh are downloaded right away
+     * @param thumbnailQuality WebP quality of thumbnails
+     * @param articlePrefetchBytes Bytes of full articles saved per refresh
+     */
+    DownloadPolicy(int networkThreads, int prefetchAheadRows, int prefetchMaxAheadRows,
+                   int prefetchBehindRows, boolean backgroundPictures, int thumbnailQuality,
+                   long articlePrefetchBytes) {
+        this.networkThreads = networkThreads;
+        this.prefetchAheadRows = prefetchAheadRows;
+        this.prefetchMaxAheadRows = prefetchMaxAheadRows;
+        this.prefetchBehindRows = prefetchBehindRows;
+        this.backgroundPictures = backgroundPictures;
+        this.thumbnailQuality = thumbnailQuality;
+        this.articlePrefetchBytes = articlePrefetchBytes;
+    }
+
+    /**
+     * Picks the policy for a device state
+     * @param state Network and battery state
+     * @return Policy to follow
+     */
+    public static DownloadPolicy forState(DeviceState state) {
+        if (state.isPowerSaveMode())
+            return POWER_SAVE;
+        if (state.isMetered())
+            return METERED;
+        return UNMETERED;
+    }
+
+    /**
+     * Number of parallel network downloads
+     * @return Thread count of the network pool
+     */
+    public int getNetworkThreads() {
+        return networkThreads;
+    }
+
+    /**
+     * Most rows prefetched ahead of the screen while scrolling slowly
+     * @return Row count
+     */
+    public int getPrefetchAheadRows() {
+        return prefetchAheadRows;
+    }
+
+    /**
+     * Most rows prefetched ahead of the screen while flinging
+     * @return Row count
+     */
+    public int getPrefetchMaxAheadRows() {
+        return prefetchMaxAheadRows;
+    }
+
+    /**
+     * Most rows kept prefetched behind the screen
+     * @return Row count
+     */
+    public int getPrefetchBehindRows() {
+        return prefetchBehindRows;
+    }
+
+    /**
+     * Whether pictures of a refresh are downloaded before they are shown
+     * @return True if pictures are downloaded in background
+     */
+    public boolean isBackgroundPictures() {
+        return backgroundPictures;
+    }
+
+    /**
+     * WebP quality of thumbnails
+     * @return Quality from 0 to 100
+     */
+    public int getThumbnailQuality() {
+        return thumbnailQuality;
+    }
+
+    /**
+     * Bytes of full articles saved for offline reading per refresh
+     * @return Byte budget, 0 to save none
+     */
+    public long getArticlePrefetchBytes() {
+        return articlePrefetchBytes;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * @file   FailedUrlCache.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-18
+ * @brief  Negative cache of URLs which failed to download
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers URLs whose download failed and holds them back with exponential
+ * backoff: after the first failure a URL isn't retried for the base delay,
+ * and every further failure doubles the delay up to the maximum. A success
+ * forgets the URL. Only the most recently failed URLs are kept.
+ * Thread-safe, failures are recorded by background downloads.
+ */
+public class FailedUrlCache {
+
+    /**
+     * Default delay after the first failure
+     */
+    public static final long DEFAULT_BASE_DELAY_MS = 60 * 1000;
+
+    /**
+     * Default longest delay
+     */
+    public static final long DEFAULT_MAX_DELAY_MS = 24 * 60 * 60 * 1000;
+
+    /**
+     * Default number of failed URLs remembered
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    /**
+     * Failure history of a URL
+     */
+    private static class Failure {
+        /**
+         * Number of failures in a row
+         */
+        int count;
+
+        /**
+         * System.nanoTime() before which the URL isn't retried
+         */
+        long retryAt;
+    }
+
+    /**
+     * Delay after the first failure, in nanoseconds
+     */
+    private final long baseDelayNanos;
+
+    /**
+     * Longest delay, in nanoseconds
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * Failed URLs, least recently failed first
+     */
+    private final LinkedHashMap<String, Failure> failures;
+
+    /**
+     * Creates a cache with the default delays and size
+     */
+    public FailedUrlCache() {
+        this(DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a cache
+     * @param baseDelayMs Delay after the first failure
+     * @param maxDelayMs Longest delay
+     * @param maxEntries Number of failed URLs remembered
+     */
+    public FailedUrlCache(long baseDelayMs, long maxDelayMs, final int maxEntries) {
+        this.baseDelayNanos = baseDelayMs * 1000000;
+        this.maxDelayNanos = maxDelayMs * 1000000;
+        this.failures = new LinkedHashMap<String, Failure>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Failure> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Checks whether a URL is held back after failing
+     * @param url URL to check
+     * @return True if the URL shouldn't be downloaded now
+     */
+    public boolean isBlocked(String url) {
+        return isBlocked(url, System.nanoTime());
+    }
+
+    /**
+     * Checks whether a URL is held back after failing
+     * @param url URL to check
+     * @param now Current System.nanoTime()
+     * @return True if the URL shouldn't be downloaded now
+     */
+    synchronized boolean isBlocked(String url, long now) {
+        Failure failure = failures.get(url);
+        return failure != null && now - failure.retryAt < 0;
+    }
+
+    /**
+     * Records a failed download
+     * @param url URL which failed
+     * @return Time until the URL is retried, in milliseconds
+     */
+    public long recordFailure(String url) {
+        return recordFailure(url, System.nanoTime());
+    }
+
+    /**
+     * Records a failed download
+     * @param url URL which failed
+     * @param now Current System.nanoTime()
+     * @return Time until the URL is retried, in milliseconds
+     */
+    synchronized long recordFailure(String url, long now) {
+        // Re-inserted, so the map stays ordered by the last failure
+        Failure failure = failures.remove(url);
+        if (failure == null)
+            failure = new Failure();
+        failures.put(url, failure);
+        failure.count++;
+        // Doubling stops at the maximum, so long failure streaks can't overflow
+        long delay = baseDelayNanos;
+        for (int i = 1; i < failure.count && delay < maxDelayNanos; i++)
+            delay *= 2;
+        delay = Math.min(delay, maxDelayNanos);
+        failure.retryAt = now + delay;
+        return delay / 1000000;
+    }
+
+    /**
+     * Records a successful download, clearing the URL's failures
+     * @param url URL which succeeded
+     */
+    public synchronized void recordSuccess(String url) {
+        failures.remove(url);
+    }
+
+    /**
+     * Number of failed URLs remembered
+     * @return Entry count
+     */
+    public synchronized int size() {
+        return failures.size();
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * @file   ImagePrefetcher.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-03
+ * @brief  Prefetches pictures ahead of the visible part of the news list
+ */
+
+package com.mad.cbcnewsreader;
+
+import android.os.SystemClock;
+import android.widget.AbsListView;
+import android.widget.ListAdapter;
+
+import java.util.ArrayList;
+
+/**
+ * Scroll listener which asks the PictureDownloader for the pictures of the
+ * visible rows and of the rows the user is scrolling towards.
+ * The faster the list moves, the further ahead pictures are requested.
+ */
+public class ImagePrefetcher implements AbsListView.OnScrollListener {
+
+    /**
+     * How far ahead in time to look when the list is scrolling, in milliseconds
+     */
+    private static final long LOOKAHEAD_MS = 750;
+
+    /**
+     * Picture downloader to request pictures from
+     */
+    private PictureDownloader downloader;
+
+    /**
+     * Screen the list belongs to, owns the prefetch downloads
+     */
+    private Object owner;
+
+    /**
+     * Rows to prefetch ahead of the viewport when the list is still
+     */
+    private int aheadRows;
+
+    /**
+     * Upper limit of rows to prefetch ahead of the viewport on fast flings
+     */
+    private int maxAheadRows;
+
+    /**
+     * Rows to keep behind the viewport in the scroll direction
+     */
+    private int behindRows;
+
+    /**
+     * First visible row of the last update
+     */
+    private int lastFirst = -1;
+
+    /**
+     * Visible row count of the last update
+     */
+    private int lastVisible = -1;
+
+    /**
+     * Time of the last first row change
+     */
+    private long lastTime;
+
+    /**
+     * Scroll velocity in rows per millisecond, negative when scrolling up
+     */
+    private float velocity;
+
+    /**
+     * Creates the prefetcher
+     * @param owner Screen showing the list
+     * @param downloader Picture downloader
+     * @param aheadRows Rows to prefetch ahead of the viewport
+     * @param maxAheadRows Maximum rows to prefetch ahead on fast scrolls
+     * @param behindRows Rows to keep behind the viewport
+     */
+    public ImagePrefetcher(Object owner, PictureDownloader downloader,
+                           int aheadRows, int maxAheadRows, int behindRows) {
+        this.owner = owner;
+        this.downloader = downloader;
+        this.aheadRows = aheadRows;
+        this.maxAheadRows = Math.max(aheadRows, maxAheadRows);
+        this.behindRows = behindRows;
+    }
+
+    /**
+     * Forgets the last viewport, so the next scroll event requests pictures
+     * even if the visible rows didn't move. Called when the list data changes.
+     */
+    public void reset() {
+        lastFirst = -1;
+        lastVisible = -1;
+        velocity = 0;
+    }
+
+    /**
+     * Called when the list starts or stops scrolling
+     * @param view List view
+     * @param scrollState New scroll state
+     */
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        if (scrollState == SCROLL_STATE_IDLE) {
+            velocity = 0;
+            update(view, view.getFirstVisiblePosition(), view.getChildCount());
+        }
+    }
+
+    /**
+     * Called when the list scrolls or is laid out
+     * @param view List view
+     * @param firstVisibleItem First visible row
+     * @param visibleItemCount Number of visible rows
+     * @param totalItemCount Number of rows in the list
+     */
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (firstVisibleItem == lastFirst && visibleItemCount == lastVisible)
+            return;
+
+        long now = SystemClock.uptimeMillis();
+        if (lastFirst >= 0 && now > lastTime)
+            velocity = (float) (firstVisibleItem - lastFirst) / (now - lastTime);
+        lastTime = now;
+
+        update(view, firstVisibleItem, visibleItemCount);
+    }
+
+    /**
+     * Requests pictures for the visible rows and the rows around them
+     * @param view List view
+     * @param first First visible row
+     * @param visible Number of visible rows
+     */
+    private void update(AbsListView view, int first, int visible) {
+        lastFirst = first;
+        lastVisible = visible;
+
+        ListAdapter adapter = view.getAdapter();
+        if (adapter == null || downloader == null)
+            return;
+        int total = adapter.getCount();
+
+        // Prefetch depth is capped on metered connections and in power save mode
+        DownloadPolicy policy = DownloadPolicies.current();
+        int ahead = Math.min(Math.min(maxAheadRows, policy.getPrefetchMaxAheadRows()),
+                Math.min(aheadRows, policy.getPrefetchAheadRows()) + Math.round(Math.abs(velocity) * LOOKAHEAD_MS));
+        int behind = Math.min(behindRows, policy.getPrefetchBehindRows());
+        boolean down = velocity >= 0;
+
+        ArrayList<String> urls = new ArrayList<>();
+
+        // Visible rows go first, then rows in the scroll direction by distance
+        for (int i = first; i < first + visible && i < total; i++)
+            addUrl(adapter, i, urls);
+        int visibleCount = urls.size();
+        for (int i = 1; i <= ahead; i++)
+            addUrl(adapter, down ? first + visible - 1 + i : first - i, urls);
+        for (int i = 1; i <= behind; i++)
+            addUrl(adapter, down ? first - i : first + visible - 1 + i, urls);
+
+        downloader.Prefetch(owner, urls, visibleCount);
+    }
+
+    /**
+     * Adds picture URL of a list row
+     * @param adapter List adapter
+     * @param position Row position, ignored if outside of the list
+     * @param urls List to add to
+     */
+    private static void addUrl(ListAdapter adapter, int position, ArrayList<String> urls) {
+        if (position < 0 || position >= adapter.getCount())
+            return;
+        Object item = adapter.getItem(position);
+        if (item instanceof NewsEntry)
+            urls.add(((NewsEntry) item).getPictureUrl());
+    }
+}
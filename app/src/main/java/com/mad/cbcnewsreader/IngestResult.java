@@ -0,0 +1,109 @@
+/**
+ * @file   IngestResult.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-09
+ * @brief  Outcome of storing downloaded news
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts of articles inserted, updated and left untouched by an ingest
+ */
+public class IngestResult {
+
+    /**
+     * Number of new articles
+     */
+    private int inserted;
+
+    /**
+     * Number of existing articles whose content changed
+     */
+    private int updated;
+
+    /**
+     * Number of existing articles with unchanged content
+     */
+    private int unchanged;
+
+    /**
+     * GUIDs of existing articles whose content changed
+     */
+    private final ArrayList<String> updatedGuids = new ArrayList<>();
+
+    /**
+     * Counts a new article
+     */
+    void addInserted() {
+        inserted++;
+    }
+
+    /**
+     * Counts a changed article
+     * @param guid GUID of the article
+     */
+    void addUpdated(String guid) {
+        updated++;
+        updatedGuids.add(guid);
+    }
+
+    /**
+     * Counts an unchanged article
+     */
+    void addUnchanged() {
+        unchanged++;
+    }
+
+    /**
+     * Inserted count getter
+     * @return Number of new articles
+     */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Updated count getter
+     * @return Number of changed articles
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Changed articles getter
+     * @return GUIDs of the articles whose content changed
+     */
+    public List<String> getUpdatedGuids() {
+        return updatedGuids;
+    }
+
+    /**
+     * Unchanged count getter
+     * @return Number of articles which were skipped
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Number of articles actually written
+     * @return Inserted plus updated articles
+     */
+    public int getModified() {
+        return inserted + updated;
+    }
+
+    /**
+     * Describes the result for logging
+     * @return Human readable counts
+     */
+    @Override
+    public String toString() {
+        return "inserted " + inserted + ", updated " + updated + ", unchanged " + unchanged;
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * @file   ListSnapshot.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-02
+ * @brief  Compact binary snapshot of the first screen of the news list
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the first rows of the news list in a small binary file, so that
+ * the list can be shown on launch before the database is opened.
+ *
+ * File layout: magic, version, row count, then for every row the title,
+ * category, picture URL and GUID as length-prefixed UTF-8 strings,
+ * a read flag byte and the length-prefixed picture preview.
+ */
+public class ListSnapshot {
+
+    /**
+     * Name of the snapshot file inside the files directory
+     */
+    public static final String FILE_NAME = "list_snapshot.bin";
+
+    /**
+     * Number of rows stored in the snapshot, enough to fill the first screen
+     */
+    public static final int MAX_ROWS = 24;
+
+    /**
+     * File signature
+     */
+    private static final int MAGIC = 0x4E575331;
+
+    /**
+     * Format version, bumped when the layout changes
+     */
+    private static final int VERSION = 3;
+
+    /**
+     * Encoding of all strings in the snapshot
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Snapshot file
+     */
+    private final File file;
+
+    /**
+     * Creates a snapshot stored in the given directory
+     * @param dir Directory to keep the snapshot in
+     */
+    public ListSnapshot(File dir) {
+        this.file = new File(dir, FILE_NAME);
+    }
+
+    /**
+     * Writes the first rows of the list to the snapshot.
+     * The file is replaced atomically so a reader never sees half a snapshot.
+     * @param news Sorted list of news
+     * @return True if the snapshot was written
+     */
+    public boolean write(List<NewsEntry> news) {
+        File tmp = new File(file.getPath() + ".tmp");
+        int count = Math.min(news.size(), MAX_ROWS);
+        try {
+            DataOutputStream output = new DataOutputStream(new FileOutputStream(tmp));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    NewsEntry entry = news.get(i);
+                    writeString(output, entry.getTitle());
+                    writeString(output, entry.getCategory());
+                    writeString(output, entry.getPictureUrl());
+                    writeString(output, entry.getGuid());
+                    output.writeByte(entry.isRead() ? 1 : 0);
+                    writeBytes(output, entry.getPreview());
+                }
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return false;
+        }
+        return tmp.renameTo(file);
+    }
+
+    /**
+     * Reads the snapshot by memory-mapping it.
+     * Entries only have the title, category, picture URL, GUID, read state and preview filled in.
+     * @return List of snapshot rows, or NULL if there's no valid snapshot
+     */
+    public ArrayList<NewsEntry> read() {
+        if (!file.isFile())
+            return null;
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                    return null;
+
+                int count = buffer.getInt();
+                if (count < 0 || count > MAX_ROWS)
+                    return null;
+
+                ArrayList<NewsEntry> news = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    NewsEntry entry = new NewsEntry();
+                    entry.setTitle(readString(buffer));
+                    entry.setCategory(readString(buffer));
+                    entry.setPictureUrl(readString(buffer));
+                    entry.setGuid(readString(buffer));
+                    entry.setRead(buffer.get() != 0);
+                    entry.setPreview(readBytes(buffer));
+                    news.add(entry);
+                }
+                return news;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a length-prefixed string, -1 length stands for NULL
+     * @param output Stream to write to
+     * @param value String to write
+     * @throws IOException If writing failed
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        writeBytes(output, value == null ? null : value.getBytes(UTF_8));
+    }
+
+    /**
+     * Writes a length-prefixed byte array, -1 length stands for NULL
+     * @param output Stream to write to
+     * @param bytes Bytes to write
+     * @throws IOException If writing failed
+     */
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed string
+     * @param buffer Buffer to read from
+     * @return String or NULL
+     */
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = readBytes(buffer);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    /**
+     * Reads a length-prefixed byte array
+     * @param buffer Buffer to read from
+     * @return Bytes or NULL
+     */
+    private static byte[] readBytes(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        if (length > buffer.remaining())
+            throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * @file   ListenerRegistry.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-04
+ * @brief  Registry of listeners owned by screens
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Thread-safe list of listeners, each belonging to an owner such as an activity.
+ * All listeners of an owner are removed at once when the owner goes away.
+ * Owners and listeners are only weakly referenced, so a screen that forgets
+ * to unregister can still be garbage collected.
+ * @param <T> Listener type
+ */
+public class ListenerRegistry<T> {
+
+    /**
+     * A single listener registration
+     * @param <T> Listener type
+     */
+    private static class Registration<T> {
+        /**
+         * Owner of the listener
+         */
+        final WeakReference<Object> owner;
+
+        /**
+         * The listener
+         */
+        final WeakReference<T> listener;
+
+        /**
+         * Creates a registration
+         * @param owner Owner of the listener
+         * @param listener The listener
+         */
+        Registration(Object owner, T listener) {
+            this.owner = new WeakReference<>(owner);
+            this.listener = new WeakReference<>(listener);
+        }
+
+        /**
+         * Checks whether the owner or the listener were garbage collected
+         * @return True if the registration is no longer usable
+         */
+        boolean isCleared() {
+            return owner.get() == null || listener.get() == null;
+        }
+    }
+
+    /**
+     * Registered listeners
+     */
+    private final ArrayList<Registration<T>> registrations = new ArrayList<>();
+
+    /**
+     * Adds a listener. Adding the same listener twice has no effect.
+     * @param owner Owner of the listener
+     * @param listener Listener to add
+     */
+    public synchronized void add(Object owner, T listener) {
+        prune();
+        for (Registration<T> registration: registrations) {
+            if (registration.listener.get() == listener)
+                return;
+        }
+        registrations.add(new Registration<>(owner, listener));
+    }
+
+    /**
+     * Removes a listener
+     * @param listener Listener to remove
+     */
+    public synchronized void remove(T listener) {
+        Iterator<Registration<T>> it = registrations.iterator();
+        while (it.hasNext()) {
+            Registration<T> registration = it.next();
+            if (registration.isCleared() || registration.listener.get() == listener)
+                it.remove();
+        }
+    }
+
+    /**
+     * Removes all listeners of an owner
+     * @param owner Owner going away
+     */
+    public synchronized void removeOwner(Object owner) {
+        Iterator<Registration<T>> it = registrations.iterator();
+        while (it.hasNext()) {
+            Registration<T> registration = it.next();
+            if (registration.isCleared() || registration.owner.get() == owner)
+                it.remove();
+        }
+    }
+
+    /**
+     * Copies the live listeners, so they can be called without holding the lock
+     * @return List of listeners
+     */
+    public synchronized List<T> getListeners() {
+        prune();
+        ArrayList<T> listeners = new ArrayList<>(registrations.size());
+        for (Registration<T> registration: registrations) {
+            T listener = registration.listener.get();
+            if (listener != null)
+                listeners.add(listener);
+        }
+        return listeners;
+    }
+
+    /**
+     * Number of live registrations
+     * @return Registration count
+     */
+    public synchronized int size() {
+        prune();
+        return registrations.size();
+    }
+
+    /**
+     * Drops registrations whose owner or listener were garbage collected
+     */
+    private void prune() {
+        Iterator<Registration<T>> it = registrations.iterator();
+        while (it.hasNext()) {
+            if (it.next().isCleared())
+                it.remove();
+        }
+    }
+}
@@ -8,26 +8,55 @@
 package com.mad.cbcnewsreader;
 
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.SubMenu;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ListView;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.List;
 
 /**
  * Activity which displays a list of news entries
  */
-public class MainActivity extends AppCompatActivity implements NewsUpdatedInterface, PicturesDownloadedInterface {
+public class MainActivity extends AppCompatActivity implements NewsUpdatedInterface, NewsLoadedInterface,
+        PicturesDownloadedInterface {
 
     static String LOG_TAG = "newsapp";
 
+    /**
+     * Rows to prefetch pictures for ahead of the visible rows
+     */
+    static final int PREFETCH_AHEAD_ROWS = 5;
+
+    /**
+     * Maximum rows to prefetch pictures for ahead of the visible rows on flings
+     */
+    static final int PREFETCH_MAX_AHEAD_ROWS = 20;
+
+    /**
+     * Rows to keep pictures loading for behind the visible rows
+     */
+    static final int PREFETCH_BEHIND_ROWS = 2;
+
+    /**
+     * Largest full article page to save for offline reading
+     */
+    static final long ARTICLE_MAX_PAGE_BYTES = 1024 * 1024;
+
+    /**
+     * Menu group of the section items
+     */
+    static final int SECTIONS_GROUP = 1;
+
     /**
      * Pull-to-refresh layout
      */
@@ -48,11 +77,57 @@ public class MainActivity extends AppCompatActivity implements NewsUpdatedInterf
      */
     public static NewsEntryDB db;
 
+    /**
+     * Shared refresh coordinator, so only one refresh of the feed runs at a time
+     */
+    public static RefreshCoordinator refreshes;
+
     /**
      * Adapter to put news into a ListView
      */
     private NewsAdapter adapter;
 
+    /**
+     * Snapshot of the first list rows shown before the database is loaded
+     */
+    private ListSnapshot snapshot;
+
+    /**
+     * Prefetches pictures around the visible rows
+     */
+    private ImagePrefetcher prefetcher;
+
+    /**
+     * Full article pages saved for offline reading
+     */
+    private ArticleStore articleStore;
+
+    /**
+     * Running database load, if any
+     */
+    private NewsLoader loader;
+
+    /**
+     * Running read of the unread counters, if any
+     */
+    private CountersTask countersTask;
+
+    /**
+     * Sections shown in the menu, as last read by CountersTask
+     */
+    private List<Category> categories = new ArrayList<>();
+
+    /**
+     * Section being shown, or NewsLoader.ALL_CATEGORIES
+     */
+    private long categoryId = NewsLoader.ALL_CATEGORIES;
+
+    /**
+     * Whether the list was loaded from the database yet, until then
+     * the snapshot is shown and the database is left alone
+     */
+    private boolean loadedFromDB;
+
     /**
      * Initializes the activity
      */
@@ -62,12 +137,39 @@ public class MainActivity extends AppCompatActivity implements NewsUpdatedInterf
         setContentView(R.layout.activity_main);
         swipeRefresh = findViewById(R.id.swiperefresh);
         newsList = findViewById(R.id.newslist);
-        db = new NewsEntryDB(this);
-        PictureDownloader.Initialize(this, this);
+        // Shared objects only keep the application context, so they don't leak this activity
+        if (db == null)
+            db = new NewsEntryDB(getApplicationContext());
+        DownloadPolicies.setDeviceState(new AndroidDeviceState(this));
+        PictureDownloader.Initialize(this, db);
         downloader = PictureDownloader.getInstance();
+        downloader.AddListener(this, this);
+        if (refreshes == null)
+            refreshes = RefreshCoordinator.forDatabase(downloader, db);
+        prefetcher = new ImagePrefetcher(this, downloader, PREFETCH_AHEAD_ROWS,
+                PREFETCH_MAX_AHEAD_ROWS, PREFETCH_BEHIND_ROWS);
+        newsList.setOnScrollListener(prefetcher);
+
+        // Show the snapshot right away, the database takes over once loaded
+        snapshot = new ListSnapshot(getFilesDir());
+        articleStore = new ArticleStore(getFilesDir());
+        ArrayList<NewsEntry> snapshotEntries = snapshot.read();
+        if (snapshotEntries != null) {
+            loadNews(snapshotEntries);
+            // Only the first screen's thumbnails are loaded up front, the rest as they're shown
+            ArrayList<String> pictureUrls = new ArrayList<>();
+            for (NewsEntry entry: snapshotEntries)
+                pictureUrls.add(entry.getPictureUrl());
+            downloader.Preload(pictureUrls);
+        }
+
+        LoadNewsFromDB(false);
 
-        ArrayList<NewsEntry> newsEntries = db.getNewsEntries();
-        loadNews(newsEntries);
+        // A refresh started before the screen was recreated still delivers here
+        if (refreshes.isRefreshing(NewsUpdater.FEED_URL)) {
+            refreshes.refresh(NewsUpdater.FEED_URL, this, this);
+            swipeRefresh.setRefreshing(true);
+        }
 
         swipeRefresh.setOnRefreshListener(
 
@@ -84,6 +186,7 @@ public class MainActivity extends AppCompatActivity implements NewsUpdatedInterf
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
                 NewsEntry entry = (NewsEntry) newsList.getItemAtPosition(position);
+                entry.setRead(true);
                 Intent intent = new Intent(MainActivity.this, ArticleActivity.class);
                 intent.putExtra("guid", entry.getGuid());
                 startActivity(intent);
@@ -93,40 +196,196 @@ public class MainActivity extends AppCompatActivity implements NewsUpdatedInterf
 
     /**
      * Loads news into the ListView
-     * @param news List of news to display
+     * @param news Sorted list of news to display
      */
-    public void loadNews(ArrayList<NewsEntry> news) {
-        Collections.sort(news);
+    public void loadNews(List<NewsEntry> news) {
         adapter = new NewsAdapter(this, news, downloader);
+        prefetcher.reset();
         newsList.setAdapter(adapter);
     }
 
     /**
-     * Updates news over the network
+     * Updates news over the network, or joins the refresh already running.
+     * Refreshes are user-triggered, so they jump ahead of queued picture downloads.
+     * A refresh right after the last one is skipped and only stops the progress indicator.
      */
     public void UpdateNews() {
-        NewsUpdater updater = new NewsUpdater(this, downloader);
-        updater.execute();
+        RefreshCoordinator.Outcome outcome = refreshes.refresh(NewsUpdater.FEED_URL, this, this);
+        Log.i(LOG_TAG, "Refresh: " + outcome);
+        if (outcome == RefreshCoordinator.Outcome.THROTTLED)
+            swipeRefresh.setRefreshing(false);
+    }
+
+    /**
+     * Cancels background work of this screen.
+     * A refresh may be shared with other screens, so it is only detached from.
+     */
+    @Override
+    protected void onDestroy() {
+        refreshes.removeOwner(this);
+        if (loader != null)
+            loader.cancel(false);
+        if (countersTask != null)
+            countersTask.cancel(false);
+        super.onDestroy();
     }
 
     /**
      * Handles news update events
      * @param news List of news retrieved over the network
+     * @param result Counts of articles written to the database
      */
     @Override
-    public void onNewsUpdated(ArrayList<NewsEntry> news) {
+    public void onNewsUpdated(ArrayList<NewsEntry> news, IngestResult result) {
         swipeRefresh.setRefreshing(false);
-        for (NewsEntry ne: news) {
-            if(db.getByGuid(ne.getGuid()) == null) {
-                db.insertNewsEntry(ne);
+        Log.i(LOG_TAG, "News ingested: " + result);
+
+        // Save full stories of the feed for offline reading
+        // The budget depends on the connection, and is zero when metered
+        long budget = DownloadPolicies.current().getArticlePrefetchBytes();
+        ArticlePrefetcher.enqueue(new ArticlePrefetcher(articleStore, news, result.getUpdatedGuids(),
+                budget, ARTICLE_MAX_PAGE_BYTES));
+
+        // Nothing changed, keep the list as is
+        if (result.getModified() == 0)
+            return;
+
+        // Reload news from db to get both new and old news,
+        // and refresh the snapshot used on the next launch
+        LoadNewsFromDB(true);
+    }
+
+    /**
+     * Shows read state changes made on the article screen
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (adapter != null)
+            adapter.notifyDataSetChanged();
+        if (loadedFromDB)
+            UpdateCounters();
+    }
+
+    /**
+     * Shows the section name and its unread count under the title, and the
+     * sections with their unread counts in the menu, once the counters are
+     * read on the database pool. The database is locked for whole refreshes
+     * and list loads, so it's never read on the UI thread.
+     */
+    private void UpdateCounters() {
+        if (countersTask != null)
+            countersTask.cancel(false);
+        countersTask = new CountersTask(this, categoryId);
+        countersTask.executeOnExecutor(TaskExecutors.database().withPriority(Priority.IMMEDIATE));
+    }
+
+    /**
+     * Shows the unread count under the title and the sections in the menu
+     * @param unread Number of unread articles
+     * @param section Name of the section shown, or NULL for all of them
+     * @param categories Sections with their unread counts
+     */
+    private void ShowCounters(int unread, String section, List<Category> categories) {
+        String badge = getResources().getQuantityString(R.plurals.unread_count, unread, unread);
+        getSupportActionBar().setSubtitle(section == null ? badge : getString(R.string.section_unread, section, badge));
+        this.categories = categories;
+        invalidateOptionsMenu();
+    }
+
+    /**
+     * Reads the unread counter of a section and the list of sections.
+     * Counters are maintained by the database, so these are small reads.
+     */
+    private static class CountersTask extends AsyncTask<Void, Void, Void> {
+        /**
+         * Screen to show the counters on.
+         * Weak, so a queued read doesn't keep a destroyed screen alive.
+         */
+        private final WeakReference<MainActivity> activity;
+
+        /**
+         * Section to read, or NewsLoader.ALL_CATEGORIES
+         */
+        private final long categoryId;
+
+        /**
+         * Number of unread articles
+         */
+        private int unread;
+
+        /**
+         * Name of the section, NULL for all of them
+         */
+        private String section;
+
+        /**
+         * All sections with their unread counts
+         */
+        private List<Category> categories;
+
+        /**
+         * Creates the task
+         * @param activity Screen to show the counters on
+         * @param categoryId Section to read, or NewsLoader.ALL_CATEGORIES
+         */
+        CountersTask(MainActivity activity, long categoryId) {
+            this.activity = new WeakReference<>(activity);
+            this.categoryId = categoryId;
+        }
+
+        /**
+         * Reads the counters in background
+         * @param voids Unused
+         * @return Unused
+         */
+        @Override
+        protected Void doInBackground(Void... voids) {
+            if (categoryId == NewsLoader.ALL_CATEGORIES) {
+                unread = db.getUnreadCount();
             } else {
-                db.updateNewsEntry(ne);
+                Category category = db.getCategory(categoryId);
+                if (category != null) {
+                    unread = category.getUnreadCount();
+                    section = category.getName();
+                }
             }
+            categories = db.getCategories();
+            return null;
         }
 
-        // Reload news from db to get both new and old news
-        ArrayList<NewsEntry> newsEntries = db.getNewsEntries();
-        loadNews(newsEntries);
+        /**
+         * Shows the counters, unless the screen was closed meanwhile
+         * @param v Unused
+         */
+        @Override
+        protected void onPostExecute(Void v) {
+            MainActivity screen = activity.get();
+            if (screen != null && !screen.isFinishing())
+                screen.ShowCounters(unread, section, categories);
+        }
+    }
+
+    /**
+     * Loads news of the current section from the database in background
+     * @param writeSnapshot Whether to refresh the launch snapshot
+     */
+    private void LoadNewsFromDB(boolean writeSnapshot) {
+        if (loader != null)
+            loader.cancel(false);
+        loader = new NewsLoader(this, db, writeSnapshot ? snapshot : null, categoryId);
+        loader.executeOnExecutor(TaskExecutors.database().withPriority(Priority.IMMEDIATE));
+    }
+
+    /**
+     * Handles news loaded from the database
+     * @param news Sorted list of news
+     */
+    @Override
+    public void onNewsLoaded(List<NewsEntry> news) {
+        loadNews(news);
+        loadedFromDB = true;
+        UpdateCounters();
     }
 
     /**
@@ -140,6 +399,24 @@ public class MainActivity extends AppCompatActivity implements NewsUpdatedInterf
         return true;
     }
 
+    /**
+     * Fills the sections submenu with the sections last read in background.
+     * Until they're read only the whole feed is listed.
+     * @param menu Menu to prepare
+     * @return True to display the menu
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        SubMenu sections = menu.findItem(R.id.menu_sections).getSubMenu();
+        sections.clear();
+        sections.add(SECTIONS_GROUP, (int) NewsLoader.ALL_CATEGORIES, 0, R.string.section_all);
+        int order = 1;
+        for (Category category: categories)
+            sections.add(SECTIONS_GROUP, (int) category.getId(), order++,
+                    getString(R.string.section_badge, category.getName(), category.getUnreadCount()));
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     /**
      * Called when a menu item is selected
      * @param item Item that is selected
@@ -147,6 +424,14 @@ public class MainActivity extends AppCompatActivity implements NewsUpdatedInterf
      */
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
+        // Switch to another section
+        if (item.getGroupId() == SECTIONS_GROUP) {
+            categoryId = item.getItemId();
+            UpdateCounters();
+            LoadNewsFromDB(false);
+            return true;
+        }
+
         switch (item.getItemId()) {
 
             // Check if user triggered a refresh:
@@ -157,7 +442,7 @@ public class MainActivity extends AppCompatActivity implements NewsUpdatedInterf
                 swipeRefresh.setRefreshing(true);
 
                 // Start the refresh background task.
-                // This method calls setRefreshing(false) when it's finished.
+                // setRefreshing(false) is called when it's finished or skipped.
                 UpdateNews();
 
                 return true;
@@ -172,6 +457,7 @@ public class MainActivity extends AppCompatActivity implements NewsUpdatedInterf
      */
     @Override
     public void onPicturesDownloaded() {
-        adapter.notifyDataSetChanged();
+        if (adapter != null)
+            adapter.notifyDataSetChanged();
     }
 }
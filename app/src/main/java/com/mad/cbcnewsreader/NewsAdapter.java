@@ -8,6 +8,10 @@
 package com.mad.cbcnewsreader;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.os.AsyncTask;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,6 +20,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Adapter that maps NewsEntry to ListView.
@@ -25,7 +30,7 @@ public class NewsAdapter extends ArrayAdapter<NewsEntry> {
     /**
      * List of news to display
      */
-    private ArrayList<NewsEntry> news;
+    private List<NewsEntry> news;
 
     /**
      * Android context
@@ -37,19 +42,81 @@ public class NewsAdapter extends ArrayAdapter<NewsEntry> {
      */
     private PictureDownloader pictures;
 
+    /**
+     * Number of rendered previews kept, a few screens worth
+     */
+    private static final int PREVIEW_CACHE_SIZE = 64;
+
+    /**
+     * Rendered picture previews by article GUID, so scrolling doesn't recreate them
+     */
+    private final LruCache<String, Bitmap> previews = new LruCache<>(PREVIEW_CACHE_SIZE);
+
+    /**
+     * Number of rows kept built, a few screens worth
+     */
+    private static final int ROW_CACHE_SIZE = 64;
+
+    /**
+     * Built rows by position. A NewsColumns list builds a new row with its
+     * own strings on every get(), so binding, prefetching and clicks share these.
+     */
+    private final LruCache<Integer, NewsEntry> rows = new LruCache<>(ROW_CACHE_SIZE);
+
+    /**
+     * Rows around a bound row whose texts are measured in advance
+     */
+    private static final int TEXT_PREFETCH_ROWS = 12;
+
+    /**
+     * Number of measured texts kept per kind, a few flings worth
+     */
+    private static final int TEXT_CACHE_SIZE = 160;
+
+    /**
+     * Measured titles of unread articles, which are drawn bold
+     */
+    private final TextLayoutCache unreadTitles = new TextLayoutCache(TEXT_CACHE_SIZE);
+
+    /**
+     * Measured titles of read articles
+     */
+    private final TextLayoutCache readTitles = new TextLayoutCache(TEXT_CACHE_SIZE);
+
+    /**
+     * Measured category names, only a few distinct ones
+     */
+    private final TextLayoutCache categories = new TextLayoutCache(TEXT_CACHE_SIZE / 4);
+
     /**
      * Creates the NewsAdapter
      * @param context Android context
      * @param news List of news to display
      * @param pictures A PictureDownloader instance associated with these news
      */
-    public NewsAdapter(Context context, ArrayList<NewsEntry> news, PictureDownloader pictures) {
+    public NewsAdapter(Context context, List<NewsEntry> news, PictureDownloader pictures) {
         super(context, 0, news);
         this.context = context;
         this.news = news;
         this.pictures = pictures;
     }
 
+    /**
+     * Gets the article at a position, built once while it's around the visible rows.
+     * Also called on the decode pool by the text prefetch, the row cache is thread-safe.
+     * @param position Position in the list
+     * @return Article summary
+     */
+    @Override
+    public NewsEntry getItem(int position) {
+        NewsEntry entry = rows.get(position);
+        if (entry == null) {
+            entry = news.get(position);
+            rows.put(position, entry);
+        }
+        return entry;
+    }
+
     /**
      * Creates a view for the list entry
      * @param position Position in the list
@@ -63,17 +130,119 @@ public class NewsAdapter extends ArrayAdapter<NewsEntry> {
         if(listItem == null)
             listItem = LayoutInflater.from(context).inflate(R.layout.list_item,parent,false);
 
-        NewsEntry entry = news.get(position);
+        NewsEntry entry = getItem(position);
 
+        // Style first, the measured text has to match it
         TextView name = listItem.findViewById(R.id.articleName);
-        name.setText(entry.getTitle());
+        name.setTypeface(null, entry.isRead() ? Typeface.NORMAL : Typeface.BOLD);
+        (entry.isRead() ? readTitles : unreadTitles).setText(name, entry.getTitle());
 
         TextView category = listItem.findViewById(R.id.articleCategory);
-        category.setText(entry.getCategory());
+        categories.setText(category, entry.getCategory());
+
+        prefetchTexts(position);
 
         ImageView image = listItem.findViewById(R.id.articleImage);
-        image.setImageBitmap(pictures.GetBitmap(entry.getPictureUrl()));
+        Bitmap picture = pictures.GetBitmap(entry.getPictureUrl());
+        if (picture != null) {
+            image.setScaleType(ImageView.ScaleType.FIT_CENTER);
+            image.setImageBitmap(picture);
+        } else {
+            // The preview fills the whole picture area until the thumbnail is loaded
+            image.setScaleType(ImageView.ScaleType.CENTER_CROP);
+            image.setImageBitmap(getPreview(entry));
+        }
 
         return listItem;
     }
+
+    /**
+     * Measures texts of the rows around a bound row in background,
+     * so they're ready when the list scrolls to them in either direction.
+     * Binding only queues the window, its rows are read on the decode pool.
+     * @param position Position of the bound row
+     */
+    private void prefetchTexts(int position) {
+        // Every few rows is enough, the window overlaps the previous one
+        if (position % (TEXT_PREFETCH_ROWS / 2) != 0)
+            return;
+        new TextWindowTask(position).executeOnExecutor(TaskExecutors.decode().withPriority(Priority.PREFETCH));
+    }
+
+    /**
+     * Collects the texts of the rows around a position for measuring
+     */
+    private class TextWindowTask extends AsyncTask<Void, Void, Void> {
+        /**
+         * Position of the bound row
+         */
+        private final int position;
+
+        /**
+         * Titles of unread articles in the window
+         */
+        private final ArrayList<String> unread = new ArrayList<>();
+
+        /**
+         * Titles of read articles in the window
+         */
+        private final ArrayList<String> read = new ArrayList<>();
+
+        /**
+         * Category names in the window
+         */
+        private final ArrayList<String> names = new ArrayList<>();
+
+        /**
+         * Creates the task
+         * @param position Position of the bound row
+         */
+        TextWindowTask(int position) {
+            this.position = position;
+        }
+
+        /**
+         * Reads the rows of the window in background
+         * @param voids Unused
+         * @return Nothing
+         */
+        @Override
+        protected Void doInBackground(Void... voids) {
+            int end = Math.min(news.size(), position + TEXT_PREFETCH_ROWS + 1);
+            for (int i = Math.max(0, position - TEXT_PREFETCH_ROWS); i < end; i++) {
+                NewsEntry entry = getItem(i);
+                (entry.isRead() ? read : unread).add(entry.getTitle());
+                names.add(entry.getCategory());
+            }
+            return null;
+        }
+
+        /**
+         * Hands the texts to the caches, which measure the missing ones
+         * @param nothing Unused
+         */
+        @Override
+        protected void onPostExecute(Void nothing) {
+            unreadTitles.prefetch(unread);
+            readTitles.prefetch(read);
+            categories.prefetch(names);
+        }
+    }
+
+    /**
+     * Renders the picture preview of an article
+     * @param entry Article
+     * @return Preview bitmap or NULL if the article has none
+     */
+    private Bitmap getPreview(NewsEntry entry) {
+        if (entry.getPreview() == null || entry.getGuid() == null)
+            return PicturePreview.toBitmap(entry.getPreview());
+        Bitmap preview = previews.get(entry.getGuid());
+        if (preview == null) {
+            preview = PicturePreview.toBitmap(entry.getPreview());
+            if (preview != null)
+                previews.put(entry.getGuid(), preview);
+        }
+        return preview;
+    }
 }
@@ -0,0 +1,320 @@
+/**
+ * @file   NewsColumns.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-17
+ * @brief  Column-oriented list of article summaries
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of article summaries stored column by column: the visible
+ * strings of all rows share one UTF-8 buffer, categories are indexes into a
+ * table of distinct names, times are primitive longs and flags are bits.
+ * Each row costs a few dozen bytes besides its text, instead of a NewsEntry
+ * with its own String objects. get() builds a short-lived NewsEntry for the
+ * row; changing its read state or preview is written back to the list.
+ */
+public class NewsColumns extends AbstractList<NewsEntry> implements RandomAccess {
+
+    /**
+     * Encoding of the text buffer
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Text fields stored per row
+     */
+    private static final int TEXT_FIELDS = 4;
+
+    /**
+     * Index of the title among the text fields
+     */
+    private static final int TITLE = 0;
+
+    /**
+     * Index of the link among the text fields
+     */
+    private static final int LINK = 1;
+
+    /**
+     * Index of the GUID among the text fields
+     */
+    private static final int GUID = 2;
+
+    /**
+     * Index of the picture URL among the text fields
+     */
+    private static final int PICTURE_URL = 3;
+
+    /**
+     * Number of rows
+     */
+    private int count;
+
+    /**
+     * UTF-8 text of all rows, field after field
+     */
+    private byte[] text;
+
+    /**
+     * Used bytes of the text buffer
+     */
+    private int textLength;
+
+    /**
+     * Start of each text field in the text buffer, the end is the start of the next one
+     */
+    private int[] textStarts;
+
+    /**
+     * Text fields which are NULL, by row * TEXT_FIELDS + field
+     */
+    private final BitSet textNulls = new BitSet();
+
+    /**
+     * Distinct category names
+     */
+    private final ArrayList<String> categoryNames = new ArrayList<>();
+
+    /**
+     * Index of each category name in categoryNames
+     */
+    private final HashMap<String, Integer> categoryIndexes = new HashMap<>();
+
+    /**
+     * Category of each row as an index into categoryNames, -1 for NULL
+     */
+    private int[] categories;
+
+    /**
+     * Publication time of each row
+     */
+    private long[] publishedTimes;
+
+    /**
+     * Rows which were read
+     */
+    private final BitSet read = new BitSet();
+
+    /**
+     * Encoded previews, PicturePreview.BYTES per row
+     */
+    private byte[] previews;
+
+    /**
+     * Rows which have a preview
+     */
+    private final BitSet hasPreview = new BitSet();
+
+    /**
+     * A row of the list, writing changes of the read state and preview back to it
+     */
+    private class Row extends NewsEntry {
+        /**
+         * Position of the row
+         */
+        private final int index;
+
+        /**
+         * Builds the row
+         * @param index Position of the row
+         */
+        Row(int index) {
+            this.index = index;
+            setTitle(readText(index, TITLE));
+            setLink(readText(index, LINK));
+            setGuid(readText(index, GUID));
+            setPictureUrl(readText(index, PICTURE_URL));
+            int category = categories[index];
+            setCategory(category < 0 ? null : categoryNames.get(category));
+            setPublishedTime(publishedTimes[index]);
+            super.setRead(read.get(index));
+            super.setPreview(readPreview(index));
+        }
+
+        /**
+         * Read state setter, also updates the list
+         * @param read Whether the article was opened
+         */
+        @Override
+        public void setRead(boolean read) {
+            super.setRead(read);
+            NewsColumns.this.read.set(index, read);
+        }
+
+        /**
+         * Picture preview setter, also updates the list
+         * @param preview Encoded PicturePreview
+         */
+        @Override
+        public void setPreview(byte[] preview) {
+            super.setPreview(preview);
+            writePreview(index, preview);
+        }
+    }
+
+    /**
+     * Creates an empty list
+     * @param capacity Expected number of rows
+     */
+    public NewsColumns(int capacity) {
+        capacity = Math.max(1, capacity);
+        text = new byte[capacity * 64];
+        textStarts = new int[capacity * TEXT_FIELDS + 1];
+        categories = new int[capacity];
+        publishedTimes = new long[capacity];
+        previews = new byte[capacity * PicturePreview.BYTES];
+    }
+
+    /**
+     * Appends a row, only done while the list is being built
+     * @param title Title
+     * @param link URL of the article
+     * @param guid GUID
+     * @param category Category name
+     * @param pictureUrl URL of the picture
+     * @param publishedTime Publication time in milliseconds since epoch
+     * @param isRead Whether the article was opened
+     * @param preview Encoded PicturePreview or NULL
+     */
+    public void add(String title, String link, String guid, String category, String pictureUrl,
+                    long publishedTime, boolean isRead, byte[] preview) {
+        if (count == categories.length)
+            grow(count * 2);
+
+        int row = count++;
+        writeText(row, TITLE, title);
+        writeText(row, LINK, link);
+        writeText(row, GUID, guid);
+        writeText(row, PICTURE_URL, pictureUrl);
+
+        if (category == null) {
+            categories[row] = -1;
+        } else {
+            Integer index = categoryIndexes.get(category);
+            if (index == null) {
+                index = categoryNames.size();
+                categoryNames.add(category);
+                categoryIndexes.put(category, index);
+            }
+            categories[row] = index;
+        }
+
+        publishedTimes[row] = publishedTime;
+        read.set(row, isRead);
+        writePreview(row, preview);
+    }
+
+    /**
+     * Releases unused capacity once the list is built
+     */
+    public void trimToSize() {
+        grow(count);
+        text = Arrays.copyOf(text, textLength);
+    }
+
+    /**
+     * Builds the article at a position
+     * @param index Position in the list
+     * @return Article summary, changes to its read state and preview are kept
+     */
+    @Override
+    public NewsEntry get(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+        return new Row(index);
+    }
+
+    /**
+     * Number of rows
+     * @return Row count
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Number of distinct categories
+     * @return Category count
+     */
+    public int getCategoryCount() {
+        return categoryNames.size();
+    }
+
+    /**
+     * Resizes the row arrays
+     * @param capacity New number of rows
+     */
+    private void grow(int capacity) {
+        capacity = Math.max(1, capacity);
+        textStarts = Arrays.copyOf(textStarts, capacity * TEXT_FIELDS + 1);
+        categories = Arrays.copyOf(categories, capacity);
+        publishedTimes = Arrays.copyOf(publishedTimes, capacity);
+        previews = Arrays.copyOf(previews, capacity * PicturePreview.BYTES);
+    }
+
+    /**
+     * Appends a text field of the last row
+     * @param row Row index
+     * @param field Field index
+     * @param value Text or NULL
+     */
+    private void writeText(int row, int field, String value) {
+        int slot = row * TEXT_FIELDS + field;
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(UTF_8);
+        textNulls.set(slot, value == null);
+        if (textLength + bytes.length > text.length)
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + bytes.length));
+        System.arraycopy(bytes, 0, text, textLength, bytes.length);
+        textStarts[slot] = textLength;
+        textLength += bytes.length;
+        textStarts[slot + 1] = textLength;
+    }
+
+    /**
+     * Decodes a text field
+     * @param row Row index
+     * @param field Field index
+     * @return Text or NULL
+     */
+    private String readText(int row, int field) {
+        int slot = row * TEXT_FIELDS + field;
+        if (textNulls.get(slot))
+            return null;
+        return new String(text, textStarts[slot], textStarts[slot + 1] - textStarts[slot], UTF_8);
+    }
+
+    /**
+     * Stores the preview of a row, previews of another size are dropped
+     * @param row Row index
+     * @param preview Encoded PicturePreview or NULL
+     */
+    private void writePreview(int row, byte[] preview) {
+        boolean valid = preview != null && preview.length == PicturePreview.BYTES;
+        hasPreview.set(row, valid);
+        if (valid)
+            System.arraycopy(preview, 0, previews, row * PicturePreview.BYTES, PicturePreview.BYTES);
+    }
+
+    /**
+     * Copies the preview of a row
+     * @param row Row index
+     * @return Encoded PicturePreview or NULL
+     */
+    private byte[] readPreview(int row) {
+        if (!hasPreview.get(row))
+            return null;
+        int start = row * PicturePreview.BYTES;
+        return Arrays.copyOfRange(previews, start, start + PicturePreview.BYTES);
+    }
+}
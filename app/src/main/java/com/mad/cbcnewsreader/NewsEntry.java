@@ -11,16 +11,28 @@ import android.text.Html;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.time.LocalDate;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * News article class
+ * News article class.
+ * Articles loaded for the list are summaries: the description, author and
+ * publication date string are left NULL, the full article is read with
+ * NewsEntryDB.getByGuid().
  */
 public class NewsEntry implements Comparable<NewsEntry> {
+    /**
+     * Publication time of an article whose date wasn't parsed yet
+     */
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    /**
+     * Pattern to find the article picture inside the description
+     */
+    private static final Pattern PICTURE_PATTERN = Pattern.compile("<img src='(.*?)'");
+
     /**
      * Article title
      */
@@ -57,9 +69,25 @@ public class NewsEntry implements Comparable<NewsEntry> {
     private String description;
 
     /**
-     * Date of publication as a Date object
+     * Date of publication in milliseconds since epoch,
+     * or NO_TIME until parsed from the date string
+     */
+    private long publishedTime = NO_TIME;
+
+    /**
+     * URL of the article picture, extracted from the description on demand
+     */
+    private String pictureUrl;
+
+    /**
+     * Whether the article was opened
+     */
+    private boolean read;
+
+    /**
+     * Tiny preview of the picture, NULL until the picture is downloaded
      */
-    private Date datePublished;
+    private byte[] preview;
 
     /**
      * Creates an empty article object
@@ -87,7 +115,6 @@ public class NewsEntry implements Comparable<NewsEntry> {
         this.author = author;
         this.category = category;
         this.description = description;
-        parseDate();
     }
 
     /**
@@ -150,7 +177,7 @@ public class NewsEntry implements Comparable<NewsEntry> {
      */
     public void setPubDate(String pubdate) {
         this.pubdate = pubdate;
-        parseDate();
+        this.publishedTime = NO_TIME;
     }
 
     /**
@@ -199,25 +226,123 @@ public class NewsEntry implements Comparable<NewsEntry> {
      */
     public void setDescription(String description) {
         this.description = description;
+        this.pictureUrl = null;
+    }
+
+    /**
+     * Read state getter
+     * @return True if the article was opened
+     */
+    public boolean isRead() {
+        return read;
+    }
+
+    /**
+     * Read state setter
+     * @param read Whether the article was opened
+     */
+    public void setRead(boolean read) {
+        this.read = read;
+    }
+
+    /**
+     * Picture preview getter
+     * @return Encoded PicturePreview, or NULL if not computed yet
+     */
+    public byte[] getPreview() {
+        return preview;
+    }
+
+    /**
+     * Picture preview setter
+     * @param preview Encoded PicturePreview
+     */
+    public void setPreview(byte[] preview) {
+        this.preview = preview;
     }
 
     /**
      * Date (as a Date object) getter
-     * @return Date object
+     * @return New Date object
+     */
+    public Date getDatePublished() { return new Date(getPublishedTime()); }
+
+    /**
+     * Publication time getter
+     * @return Publication time in milliseconds since epoch
+     */
+    public long getPublishedTime() {
+        if (publishedTime == NO_TIME)
+            parseDate();
+        return publishedTime;
+    }
+
+    /**
+     * Publication time setter, used when the date string is not loaded
+     * @param publishedTime Publication time in milliseconds since epoch
+     */
+    public void setPublishedTime(long publishedTime) {
+        this.publishedTime = publishedTime;
+    }
+
+    /**
+     * Computes a fingerprint of the raw article fields, used to skip
+     * rewriting articles which didn't change since the last refresh.
+     * 64-bit FNV-1a hash over all fields, with separators and NULL markers.
+     * @return Content fingerprint
      */
-    public Date getDatePublished() { return datePublished; }
+    public long getFingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        String[] fields = { title, link, guid, pubdate, author, category, description };
+        for (String field: fields) {
+            if (field == null) {
+                hash = fnv(hash, 0xFFFF);
+            } else {
+                for (int i = 0; i < field.length(); i++)
+                    hash = fnv(hash, field.charAt(i));
+            }
+            hash = fnv(hash, 0);
+        }
+        return hash;
+    }
+
+    /**
+     * Adds a character to an FNV-1a hash
+     * @param hash Hash so far
+     * @param c Character to add
+     * @return Updated hash
+     */
+    private static long fnv(long hash, int c) {
+        hash ^= c & 0xFF;
+        hash *= 0x100000001b3L;
+        hash ^= (c >>> 8) & 0xFF;
+        hash *= 0x100000001b3L;
+        return hash;
+    }
 
     /**
      * Extracts and returns a URL to article image
      * @return URL of article image, or a fallback URL
      */
     public String getPictureUrl() {
-        Pattern pattern = Pattern.compile("<img src='(.*?)'");
-        Matcher matcher = pattern.matcher(description);
-        if (matcher.find()) {
-            return matcher.group(1);
+        if (pictureUrl != null)
+            return pictureUrl;
+        pictureUrl = "https://www.cbc.ca/a/favicon.ico";
+        if (description != null) {
+            Matcher matcher = PICTURE_PATTERN.matcher(description);
+            if (matcher.find()) {
+                pictureUrl = matcher.group(1);
+            }
         }
-        return "https://www.cbc.ca/a/favicon.ico";
+        return pictureUrl;
+    }
+
+    /**
+     * Picture URL setter, used when the description is not loaded
+     * @param pictureUrl URL of article image
+     */
+    public void setPictureUrl(String pictureUrl) {
+        this.pictureUrl = pictureUrl;
     }
 
     /**
@@ -236,14 +361,14 @@ public class NewsEntry implements Comparable<NewsEntry> {
     private void parseDate() {
         SimpleDateFormat formatter = new SimpleDateFormat("E, dd MMM yyyy HH:mm:ss zzz");
         try {
-            this.datePublished = formatter.parse(this.pubdate == null ? "" : this.pubdate);
+            this.publishedTime = formatter.parse(this.pubdate == null ? "" : this.pubdate).getTime();
         } catch (ParseException e) {
             // Generate a fallback date
             Calendar calendar = Calendar.getInstance();
             calendar.set(Calendar.YEAR, 2000);
             calendar.set(Calendar.MONTH, 1);
             calendar.set(Calendar.DATE, 1);
-            this.datePublished = calendar.getTime();
+            this.publishedTime = calendar.getTimeInMillis();
         }
     }
 
@@ -254,8 +379,8 @@ public class NewsEntry implements Comparable<NewsEntry> {
      */
     @Override
     public int compareTo(NewsEntry o) {
-        if (getDatePublished() == null || o.getDatePublished() == null)
-            return 0;
-        return o.getDatePublished().compareTo(getDatePublished());
+        long time = getPublishedTime();
+        long other = o.getPublishedTime();
+        return time < other ? 1 : (time == other ? 0 : -1);
     }
 }
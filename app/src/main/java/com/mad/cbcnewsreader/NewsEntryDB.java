@@ -14,12 +14,23 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
  * Stores and retrieves news articles with SQLite.
+ * Public methods are synchronized, as background loaders and the UI thread
+ * share one object and each call opens and closes the database.
  */
-public class NewsEntryDB {
+public class NewsEntryDB implements PreviewsCreatedInterface {
     /**
      * The underlying database object
      */
@@ -30,18 +41,85 @@ public class NewsEntryDB {
      */
     private DBHelper dbHelper;
 
+    /**
+     * False positive rate of the GUID filter
+     */
+    private final double guidFalsePositiveRate;
+
+    /**
+     * Filter of stored GUIDs, NULL until loaded.
+     * Lets the ingest skip database lookups of articles that are definitely new.
+     */
+    private BloomFilter guidFilter;
+
+    /**
+     * Deflate level of stored descriptions
+     */
+    private final int descriptionCompressionLevel;
+
+    /**
+     * Android context, used to find the seed database
+     */
+    private final Context context;
+
+    /**
+     * Asset with the seed database, NULL to start empty
+     */
+    private final String seedAsset;
+
+    /**
+     * Whether installSeed() already ran
+     */
+    private boolean seedChecked;
+
     /**
      * Constructs the database object
      * @param context Android context
      */
     public NewsEntryDB(Context context) {
-        dbHelper = new DBHelper(context);
+        this(context, DEFAULT_GUID_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Constructs the database object with a custom GUID filter
+     * @param context Android context
+     * @param guidFalsePositiveRate Share of new articles the GUID filter lets through to a lookup
+     */
+    public NewsEntryDB(Context context, double guidFalsePositiveRate) {
+        this(context, guidFalsePositiveRate, DescriptionCodec.DEFAULT_LEVEL);
+    }
+
+    /**
+     * Constructs the database object with a custom GUID filter and description compression
+     * @param context Android context
+     * @param guidFalsePositiveRate Share of new articles the GUID filter lets through to a lookup
+     * @param descriptionCompressionLevel Deflate level of descriptions, Deflater.NO_COMPRESSION to store text
+     */
+    public NewsEntryDB(Context context, double guidFalsePositiveRate, int descriptionCompressionLevel) {
+        this(context, guidFalsePositiveRate, descriptionCompressionLevel, SEED_ASSET);
+    }
+
+    /**
+     * Constructs the database object with a custom GUID filter, description compression and seed
+     * @param context Android context
+     * @param guidFalsePositiveRate Share of new articles the GUID filter lets through to a lookup
+     * @param descriptionCompressionLevel Deflate level of descriptions, Deflater.NO_COMPRESSION to store text
+     * @param seedAsset Asset with the database installed on first use, NULL to start empty
+     */
+    public NewsEntryDB(Context context, double guidFalsePositiveRate, int descriptionCompressionLevel,
+                       String seedAsset) {
+        this.context = context;
+        dbHelper = new DBHelper(context, descriptionCompressionLevel);
+        this.guidFalsePositiveRate = guidFalsePositiveRate;
+        this.descriptionCompressionLevel = descriptionCompressionLevel;
+        this.seedAsset = seedAsset;
     }
 
     /**
      * Opens database for read
      */
     private void openReadableDB() {
+        installSeed();
         db = dbHelper.getReadableDatabase();
     }
 
@@ -49,6 +127,7 @@ public class NewsEntryDB {
      * Opens database for write
      */
     private void openWriteableDB() {
+        installSeed();
         db = dbHelper.getWritableDatabase();
     }
 
@@ -61,9 +140,34 @@ public class NewsEntryDB {
         }
     }
 
+    /**
+     * Opens the database once, installing the seed and running upgrades if needed.
+     * On a large archive an upgrade recompresses every row and shrinks the file,
+     * which takes seconds, so this runs on the database pool before the first
+     * read instead of on whichever thread reads first.
+     */
+    public synchronized void prepare() {
+        this.openWriteableDB();
+        this.closeDB();
+    }
+
+    /**
+     * Closes the database connection for good, e.g. before copying the file
+     */
+    public synchronized void close() {
+        dbHelper.close();
+        db = null;
+    }
+
     // database constants
     public static final String DB_NAME = "mad_a02.db";
-    public static final int    DB_VERSION = 1;
+    public static final int    DB_VERSION = 6;
+
+    // seed database built from the feed snapshot in app/seed, see app/build.gradle
+    public static final String SEED_ASSET = "seed/" + DB_NAME;
+
+    // feed of the placeholder articles of the seed, removed by the first ingest of a real feed
+    public static final String SEED_FEED_URL = "seed:";
 
     // task table constants
     public static final String NEWS_ENTRY_TABLE = "newsentry";
@@ -92,6 +196,71 @@ public class NewsEntryDB {
     public static final String NEWS_ENTRY_DESCRIPTION = "description";
     public static final int    NEWS_ENTRY_DESCRIPTION_COL = 7;
 
+    public static final String NEWS_ENTRY_FINGERPRINT = "fingerprint";
+    public static final int    NEWS_ENTRY_FINGERPRINT_COL = 8;
+
+    public static final String NEWS_ENTRY_CATEGORY_ID = "category_id";
+    public static final int    NEWS_ENTRY_CATEGORY_ID_COL = 9;
+
+    public static final String NEWS_ENTRY_PUB_TIME = "pub_time";
+    public static final int    NEWS_ENTRY_PUB_TIME_COL = 10;
+
+    public static final String NEWS_ENTRY_READ = "read";
+    public static final int    NEWS_ENTRY_READ_COL = 11;
+
+    public static final String NEWS_ENTRY_FEED_ID = "feed_id";
+    public static final int    NEWS_ENTRY_FEED_ID_COL = 12;
+
+    public static final String NEWS_ENTRY_PICTURE_URL = "picture_url";
+    public static final int    NEWS_ENTRY_PICTURE_URL_COL = 13;
+
+    public static final String NEWS_ENTRY_PREVIEW = "preview";
+    public static final int    NEWS_ENTRY_PREVIEW_COL = 14;
+
+    // category table constants
+    public static final String CATEGORY_TABLE = "categories";
+
+    public static final String CATEGORY_ID = "_id";
+    public static final int    CATEGORY_ID_COL = 0;
+
+    public static final String CATEGORY_NAME = "name";
+    public static final int    CATEGORY_NAME_COL = 1;
+
+    public static final String CATEGORY_UNREAD = "unread_count";
+    public static final int    CATEGORY_UNREAD_COL = 2;
+
+    // feed table constants
+    public static final String FEED_TABLE = "feeds";
+
+    public static final String FEED_ID = "_id";
+    public static final int    FEED_ID_COL = 0;
+
+    public static final String FEED_URL = "url";
+    public static final int    FEED_URL_COL = 1;
+
+    public static final String FEED_UNREAD = "unread_count";
+    public static final int    FEED_UNREAD_COL = 2;
+
+    /**
+     * Largest number of GUIDs bound to a single IN (...) query
+     */
+    private static final int MAX_QUERY_ARGS = 500;
+
+    /**
+     * Default false positive rate of the GUID filter
+     */
+    public static final double DEFAULT_GUID_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Smallest number of GUIDs the filter is sized for
+     */
+    private static final int MIN_GUID_FILTER_CAPACITY = 1024;
+
+    /**
+     * Smallest list read into NewsColumns instead of separate NewsEntry objects
+     */
+    public static final int COLUMNAR_MIN_ROWS = 2000;
+
     public static final String CREATE_NEWS_ENTRY_TABLE =
             "CREATE TABLE " + NEWS_ENTRY_TABLE + " (" +
                     NEWS_ENTRY_ID             + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -101,7 +270,40 @@ public class NewsEntryDB {
                     NEWS_ENTRY_PUB_DATE       + " TEXT, " +
                     NEWS_ENTRY_AUTHOR         + " TEXT, " +
                     NEWS_ENTRY_CATEGORY       + " TEXT, " +
-                    NEWS_ENTRY_DESCRIPTION    + " TEXT);";
+                    NEWS_ENTRY_DESCRIPTION    + " BLOB, " +
+                    NEWS_ENTRY_FINGERPRINT    + " INTEGER, " +
+                    NEWS_ENTRY_CATEGORY_ID    + " INTEGER REFERENCES " + CATEGORY_TABLE + "(" + CATEGORY_ID + "), " +
+                    NEWS_ENTRY_PUB_TIME       + " INTEGER, " +
+                    NEWS_ENTRY_READ           + " INTEGER NOT NULL DEFAULT 0, " +
+                    NEWS_ENTRY_FEED_ID        + " INTEGER REFERENCES " + FEED_TABLE + "(" + FEED_ID + "), " +
+                    NEWS_ENTRY_PICTURE_URL    + " TEXT, " +
+                    NEWS_ENTRY_PREVIEW        + " BLOB);";
+
+    public static final String CREATE_CATEGORY_TABLE =
+            "CREATE TABLE " + CATEGORY_TABLE + " (" +
+                    CATEGORY_ID               + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    CATEGORY_NAME             + " TEXT    NOT NULL UNIQUE, " +
+                    CATEGORY_UNREAD           + " INTEGER NOT NULL DEFAULT 0);";
+
+    public static final String CREATE_FEED_TABLE =
+            "CREATE TABLE " + FEED_TABLE + " (" +
+                    FEED_ID                   + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    FEED_URL                  + " TEXT    NOT NULL UNIQUE, " +
+                    FEED_UNREAD               + " INTEGER NOT NULL DEFAULT 0);";
+
+    // Serves section views, newest first
+    public static final String CREATE_CATEGORY_TIME_INDEX =
+            "CREATE INDEX newsentry_category_time ON " + NEWS_ENTRY_TABLE + " (" +
+                    NEWS_ENTRY_CATEGORY_ID + ", " + NEWS_ENTRY_PUB_TIME + " DESC)";
+
+    // Serves the unfiltered list, newest first
+    public static final String CREATE_TIME_INDEX =
+            "CREATE INDEX newsentry_time ON " + NEWS_ENTRY_TABLE + " (" +
+                    NEWS_ENTRY_PUB_TIME + " DESC)";
+
+    public static final String CREATE_PICTURE_INDEX =
+            "CREATE INDEX newsentry_picture ON " + NEWS_ENTRY_TABLE + " (" +
+                    NEWS_ENTRY_PICTURE_URL + ")";
 
     public static final String DROP_NEWS_ENTRY_TABLE =
             "DROP TABLE IF EXISTS " + NEWS_ENTRY_TABLE;
@@ -112,12 +314,24 @@ public class NewsEntryDB {
      */
     private static class DBHelper extends SQLiteOpenHelper {
 
+        /**
+         * Deflate level of descriptions compressed by the upgrade
+         */
+        private final int descriptionCompressionLevel;
+
+        /**
+         * Whether the upgrade freed enough space to shrink the file
+         */
+        private boolean vacuumPending;
+
         /**
          * Creates the helper
          * @param context Android context
+         * @param descriptionCompressionLevel Deflate level of descriptions
          */
-        public DBHelper(Context context) {
+        public DBHelper(Context context, int descriptionCompressionLevel) {
             super(context, DB_NAME, null, DB_VERSION);
+            this.descriptionCompressionLevel = descriptionCompressionLevel;
         }
 
         /**
@@ -126,50 +340,587 @@ public class NewsEntryDB {
          */
         @Override
         public void onCreate(SQLiteDatabase db) {
+            db.execSQL(CREATE_CATEGORY_TABLE);
+            db.execSQL(CREATE_FEED_TABLE);
             db.execSQL(CREATE_NEWS_ENTRY_TABLE);
+            db.execSQL(CREATE_CATEGORY_TIME_INDEX);
+            db.execSQL(CREATE_TIME_INDEX);
+            db.execSQL(CREATE_PICTURE_INDEX);
         }
 
         /**
-         * Called when database needs to be upgraded
+         * Called when database needs to be upgraded.
+         * Migrates step by step, so stored articles are kept.
          * @param db Database
          * @param i Old version
          * @param i1 New version
          */
         @Override
         public void onUpgrade(SQLiteDatabase db, int i, int i1) {
-            db.execSQL(DROP_NEWS_ENTRY_TABLE);
-            onCreate(db);
+            if (i < 2) {
+                // Fingerprints of existing rows stay NULL until they are next seen
+                db.execSQL("ALTER TABLE " + NEWS_ENTRY_TABLE + " ADD COLUMN " +
+                        NEWS_ENTRY_FINGERPRINT + " INTEGER");
+            }
+            if (i < 3) {
+                upgradeCategories(db);
+            }
+            if (i < 4) {
+                upgradeReadState(db, i);
+            }
+            if (i < 5) {
+                upgradePreviews(db);
+            }
+            if (i < 6) {
+                upgradeDescriptions(db);
+            }
+        }
+
+        /**
+         * Shrinks the file after an upgrade which compressed descriptions.
+         * VACUUM can't run inside the upgrade transaction, so it runs here.
+         * @param db Database
+         */
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            if (vacuumPending && !db.isReadOnly()) {
+                vacuumPending = false;
+                db.execSQL("VACUUM");
+            }
+        }
+
+        /**
+         * Compresses stored descriptions. Descriptions which don't get smaller stay text.
+         * @param db Database
+         */
+        private void upgradeDescriptions(SQLiteDatabase db) {
+            if (descriptionCompressionLevel == Deflater.NO_COMPRESSION)
+                return;
+            Cursor cursor = db.query(NEWS_ENTRY_TABLE, new String[] { NEWS_ENTRY_ID, NEWS_ENTRY_DESCRIPTION },
+                    "typeof(" + NEWS_ENTRY_DESCRIPTION + ") = 'text'", null, null, null, null);
+            while (cursor.moveToNext()) {
+                byte[] compressed = DescriptionCodec.compress(cursor.getString(1), descriptionCompressionLevel);
+                if (compressed == null)
+                    continue;
+                ContentValues cv = new ContentValues();
+                cv.put(NEWS_ENTRY_DESCRIPTION, compressed);
+                db.update(NEWS_ENTRY_TABLE, cv, NEWS_ENTRY_ID + " = ?",
+                        new String[] { Long.toString(cursor.getLong(0)) });
+                vacuumPending = true;
+            }
+            cursor.close();
+        }
+
+        /**
+         * Adds picture URLs and previews. Picture URLs are extracted from the
+         * stored descriptions; previews stay NULL until pictures are next downloaded.
+         * @param db Database
+         */
+        private void upgradePreviews(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + NEWS_ENTRY_TABLE + " ADD COLUMN " + NEWS_ENTRY_PICTURE_URL + " TEXT");
+            db.execSQL("ALTER TABLE " + NEWS_ENTRY_TABLE + " ADD COLUMN " + NEWS_ENTRY_PREVIEW + " BLOB");
+
+            Cursor cursor = db.query(NEWS_ENTRY_TABLE, new String[] { NEWS_ENTRY_ID, NEWS_ENTRY_DESCRIPTION },
+                    null, null, null, null, null);
+            NewsEntry entry = new NewsEntry();
+            while (cursor.moveToNext()) {
+                entry.setDescription(cursor.getString(1));
+                ContentValues cv = new ContentValues();
+                cv.put(NEWS_ENTRY_PICTURE_URL, entry.getPictureUrl());
+                db.update(NEWS_ENTRY_TABLE, cv, NEWS_ENTRY_ID + " = ?",
+                        new String[] { Long.toString(cursor.getLong(0)) });
+            }
+            cursor.close();
+
+            db.execSQL(CREATE_PICTURE_INDEX);
+        }
+
+        /**
+         * Adds read state and unread counters.
+         * Existing articles become unread and belong to the top stories feed,
+         * the only feed before this version.
+         * @param db Database
+         * @param oldVersion Version being upgraded from
+         */
+        private void upgradeReadState(SQLiteDatabase db, int oldVersion) {
+            db.execSQL("ALTER TABLE " + NEWS_ENTRY_TABLE + " ADD COLUMN " + NEWS_ENTRY_READ +
+                    " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + NEWS_ENTRY_TABLE + " ADD COLUMN " + NEWS_ENTRY_FEED_ID +
+                    " INTEGER REFERENCES " + FEED_TABLE + "(" + FEED_ID + ")");
+            // Categories created by upgradeCategories already have the column
+            if (oldVersion >= 3) {
+                db.execSQL("ALTER TABLE " + CATEGORY_TABLE + " ADD COLUMN " + CATEGORY_UNREAD +
+                        " INTEGER NOT NULL DEFAULT 0");
+            }
+            db.execSQL(CREATE_FEED_TABLE);
+
+            ContentValues cv = new ContentValues();
+            cv.put(FEED_URL, NewsUpdater.FEED_URL);
+            long feedId = db.insert(FEED_TABLE, null, cv);
+            db.execSQL("UPDATE " + NEWS_ENTRY_TABLE + " SET " + NEWS_ENTRY_FEED_ID + " = " + feedId);
+
+            // Counted once here, maintained incrementally afterwards
+            db.execSQL("UPDATE " + FEED_TABLE + " SET " + FEED_UNREAD + " = " +
+                    "(SELECT COUNT(*) FROM " + NEWS_ENTRY_TABLE + ")");
+            db.execSQL("UPDATE " + CATEGORY_TABLE + " SET " + CATEGORY_UNREAD + " = " +
+                    "(SELECT COUNT(*) FROM " + NEWS_ENTRY_TABLE + " WHERE " +
+                    NEWS_ENTRY_CATEGORY_ID + " = " + CATEGORY_TABLE + "." + CATEGORY_ID + ")");
+        }
+
+        /**
+         * Moves categories into their own table and adds the publication time column
+         * @param db Database
+         */
+        private void upgradeCategories(SQLiteDatabase db) {
+            db.execSQL(CREATE_CATEGORY_TABLE);
+            db.execSQL("ALTER TABLE " + NEWS_ENTRY_TABLE + " ADD COLUMN " + NEWS_ENTRY_CATEGORY_ID +
+                    " INTEGER REFERENCES " + CATEGORY_TABLE + "(" + CATEGORY_ID + ")");
+            db.execSQL("ALTER TABLE " + NEWS_ENTRY_TABLE + " ADD COLUMN " + NEWS_ENTRY_PUB_TIME + " INTEGER");
+
+            db.execSQL("INSERT OR IGNORE INTO " + CATEGORY_TABLE + " (" + CATEGORY_NAME + ") " +
+                    "SELECT DISTINCT " + NEWS_ENTRY_CATEGORY + " FROM " + NEWS_ENTRY_TABLE +
+                    " WHERE " + NEWS_ENTRY_CATEGORY + " IS NOT NULL");
+            db.execSQL("UPDATE " + NEWS_ENTRY_TABLE + " SET " + NEWS_ENTRY_CATEGORY_ID + " = " +
+                    "(SELECT " + CATEGORY_ID + " FROM " + CATEGORY_TABLE +
+                    " WHERE " + CATEGORY_NAME + " = " + NEWS_ENTRY_TABLE + "." + NEWS_ENTRY_CATEGORY + ")");
+
+            // Dates are parsed the same way as when articles are loaded
+            Cursor cursor = db.query(NEWS_ENTRY_TABLE, new String[] { NEWS_ENTRY_ID, NEWS_ENTRY_PUB_DATE },
+                    null, null, null, null, null);
+            NewsEntry entry = new NewsEntry();
+            while (cursor.moveToNext()) {
+                entry.setPubDate(cursor.getString(1));
+                ContentValues cv = new ContentValues();
+                cv.put(NEWS_ENTRY_PUB_TIME, entry.getPublishedTime());
+                db.update(NEWS_ENTRY_TABLE, cv, NEWS_ENTRY_ID + " = ?",
+                        new String[] { Long.toString(cursor.getLong(0)) });
+            }
+            cursor.close();
+
+            db.execSQL(CREATE_CATEGORY_TIME_INDEX);
+            db.execSQL(CREATE_TIME_INDEX);
+        }
+    }
+
+    /**
+     * Category IDs by name, filled as categories are looked up
+     */
+    private final HashMap<String, Long> categoryIds = new HashMap<>();
+
+    /**
+     * Feed IDs by URL, filled as feeds are looked up
+     */
+    private final HashMap<String, Long> feedIds = new HashMap<>();
+
+    /**
+     * State of a stored article needed by the ingest
+     */
+    private static class StoredRow {
+        /**
+         * Content fingerprint, NULL if not computed yet
+         */
+        Long fingerprint;
+
+        /**
+         * Category of the article
+         */
+        Long categoryId;
+
+        /**
+         * Whether the article was opened
+         */
+        boolean read;
+
+        /**
+         * URL of the article picture
+         */
+        String pictureUrl;
+    }
+
+    /**
+     * Finds or creates the feed row for a URL.
+     * Must be called with the database open for write.
+     * @param url Feed URL
+     * @return Feed ID
+     */
+    private long getFeedId(String url) {
+        Long id = feedIds.get(url);
+        if (id != null)
+            return id;
+
+        Cursor cursor = db.query(FEED_TABLE, new String[] { FEED_ID },
+                FEED_URL + " = ?", new String[] { url }, null, null, null);
+        if (cursor.moveToFirst()) {
+            id = cursor.getLong(0);
+        } else {
+            ContentValues cv = new ContentValues();
+            cv.put(FEED_URL, url);
+            id = db.insert(FEED_TABLE, null, cv);
+        }
+        cursor.close();
+
+        feedIds.put(url, id);
+        return id;
+    }
+
+    /**
+     * Adds to unread counters of categories.
+     * Must be called with the database open for write.
+     * @param deltas Change of unread count by category ID
+     */
+    private void applyCategoryDeltas(HashMap<Long, Integer> deltas) {
+        for (Map.Entry<Long, Integer> delta: deltas.entrySet()) {
+            if (delta.getValue() != 0) {
+                db.execSQL("UPDATE " + CATEGORY_TABLE + " SET " + CATEGORY_UNREAD + " = " +
+                        CATEGORY_UNREAD + " + ? WHERE " + CATEGORY_ID + " = ?",
+                        new Object[] { delta.getValue(), delta.getKey() });
+            }
+        }
+    }
+
+    /**
+     * Adds to the unread counter of a feed.
+     * Must be called with the database open for write.
+     * @param feedId Feed ID
+     * @param delta Change of unread count
+     */
+    private void applyFeedDelta(long feedId, int delta) {
+        if (delta != 0) {
+            db.execSQL("UPDATE " + FEED_TABLE + " SET " + FEED_UNREAD + " = " +
+                    FEED_UNREAD + " + ? WHERE " + FEED_ID + " = ?", new Object[] { delta, feedId });
         }
     }
 
     /**
-     * Inserts a new news entry
-     * @param newsEntry Entry to insert
-     * @return Primary key of the new row
+     * Adds to a per-category delta
+     * @param deltas Deltas by category ID
+     * @param categoryId Category, ignored if NULL
+     * @param delta Change to add
      */
-    public long insertNewsEntry(NewsEntry newsEntry) {
+    private static void addDelta(HashMap<Long, Integer> deltas, Long categoryId, int delta) {
+        if (categoryId == null)
+            return;
+        Integer current = deltas.get(categoryId);
+        deltas.put(categoryId, (current == null ? 0 : current) + delta);
+    }
+
+    /**
+     * Finds or creates the category row for a name.
+     * Must be called with the database open for write.
+     * @param name Category name
+     * @return Category ID, or NULL for articles without a category
+     */
+    private Long getCategoryId(String name) {
+        if (name == null)
+            return null;
+        Long id = categoryIds.get(name);
+        if (id != null)
+            return id;
+
+        Cursor cursor = db.query(CATEGORY_TABLE, new String[] { CATEGORY_ID },
+                CATEGORY_NAME + " = ?", new String[] { name }, null, null, null);
+        if (cursor.moveToFirst()) {
+            id = cursor.getLong(0);
+        } else {
+            ContentValues cv = new ContentValues();
+            cv.put(CATEGORY_NAME, name);
+            id = db.insert(CATEGORY_TABLE, null, cv);
+        }
+        cursor.close();
+
+        if (id >= 0)
+            categoryIds.put(name, id);
+        return id >= 0 ? id : null;
+    }
+
+    /**
+     * Puts article content into ContentValues, without the GUID.
+     * Must be called with the database open for write.
+     * @param newsEntry Article
+     * @return Column values
+     */
+    private ContentValues toContentValues(NewsEntry newsEntry) {
         ContentValues cv = new ContentValues();
         cv.put(NEWS_ENTRY_TITLE, newsEntry.getTitle());
         cv.put(NEWS_ENTRY_LINK, newsEntry.getLink());
-        cv.put(NEWS_ENTRY_GUID, newsEntry.getGuid());
         cv.put(NEWS_ENTRY_PUB_DATE, newsEntry.getPubDate());
         cv.put(NEWS_ENTRY_AUTHOR, newsEntry.getAuthor());
         cv.put(NEWS_ENTRY_CATEGORY, newsEntry.getCategory());
-        cv.put(NEWS_ENTRY_DESCRIPTION, newsEntry.getDescription());
+        byte[] description = DescriptionCodec.compress(newsEntry.getDescription(), descriptionCompressionLevel);
+        if (description != null)
+            cv.put(NEWS_ENTRY_DESCRIPTION, description);
+        else
+            cv.put(NEWS_ENTRY_DESCRIPTION, newsEntry.getDescription());
+        cv.put(NEWS_ENTRY_FINGERPRINT, newsEntry.getFingerprint());
+        cv.put(NEWS_ENTRY_CATEGORY_ID, getCategoryId(newsEntry.getCategory()));
+        cv.put(NEWS_ENTRY_PUB_TIME, newsEntry.getPublishedTime());
+        cv.put(NEWS_ENTRY_PICTURE_URL, newsEntry.getPictureUrl());
+        return cv;
+    }
+
+    /**
+     * Stores downloaded news in one transaction.
+     * New articles are inserted, and existing ones are only rewritten when
+     * their content fingerprint differs from the stored one.
+     * Unread counters of the feed and categories are updated along the way.
+     * @param feedUrl URL of the feed the news come from
+     * @param news Downloaded news
+     * @return Counts of inserted, updated and unchanged articles
+     */
+    public synchronized IngestResult ingestNewsEntries(String feedUrl, List<NewsEntry> news) {
+        IngestResult result = new IngestResult();
 
         this.openWriteableDB();
-        long rowID = db.insert(NEWS_ENTRY_TABLE, null, cv);
+        db.beginTransaction();
+        boolean success = false;
+        try {
+            long feedId = getFeedId(feedUrl);
+            int feedDelta = 0;
+            HashMap<Long, Integer> categoryDeltas = new HashMap<>();
+
+            HashMap<String, StoredRow> known = getStoredRows(news);
+            for (NewsEntry entry: news) {
+                String guid = entry.getGuid();
+                if (guid == null)
+                    continue;
+
+                long fingerprint = entry.getFingerprint();
+                StoredRow stored = known.get(guid);
+                ContentValues cv;
+                if (stored == null) {
+                    cv = toContentValues(entry);
+                    cv.put(NEWS_ENTRY_GUID, guid);
+                    cv.put(NEWS_ENTRY_FEED_ID, feedId);
+                    db.insert(NEWS_ENTRY_TABLE, null, cv);
+                    guidFilter.add(guid);
+                    result.addInserted();
+
+                    // New articles are unread
+                    feedDelta++;
+                    addDelta(categoryDeltas, cv.getAsLong(NEWS_ENTRY_CATEGORY_ID), 1);
+                    stored = new StoredRow();
+                } else {
+                    if (stored.fingerprint != null && stored.fingerprint == fingerprint) {
+                        result.addUnchanged();
+                        continue;
+                    }
+                    cv = toContentValues(entry);
+                    // The preview belongs to the old picture
+                    if (!entry.getPictureUrl().equals(stored.pictureUrl))
+                        cv.putNull(NEWS_ENTRY_PREVIEW);
+                    db.update(NEWS_ENTRY_TABLE, cv, NEWS_ENTRY_GUID + "= ? ", new String[] { guid });
+                    result.addUpdated(guid);
+
+                    // An unread article moving to another section moves its count
+                    if (!stored.read) {
+                        addDelta(categoryDeltas, stored.categoryId, -1);
+                        addDelta(categoryDeltas, cv.getAsLong(NEWS_ENTRY_CATEGORY_ID), 1);
+                    }
+                }
+                // The feed may repeat an article
+                stored.fingerprint = fingerprint;
+                stored.categoryId = cv.getAsLong(NEWS_ENTRY_CATEGORY_ID);
+                stored.pictureUrl = entry.getPictureUrl();
+                known.put(guid, stored);
+            }
+
+            applyFeedDelta(feedId, feedDelta);
+            applyCategoryDeltas(categoryDeltas);
+            // Real articles replace the placeholders shown before the first refresh
+            if (!news.isEmpty() && !SEED_FEED_URL.equals(feedUrl))
+                removeSeed();
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            db.endTransaction();
+            this.closeDB();
+            // Rows created in a rolled back transaction don't exist
+            if (!success) {
+                categoryIds.clear();
+                feedIds.clear();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the placeholder articles installed from the seed along with their
+     * unread counts, and the sections only they were in.
+     * Must be called with the database open for write, in a transaction.
+     */
+    private void removeSeed() {
+        Cursor feed = db.query(FEED_TABLE, new String[] { FEED_ID },
+                FEED_URL + " = ?", new String[] { SEED_FEED_URL }, null, null, null);
+        Long seedFeedId = feed.moveToFirst() ? feed.getLong(0) : null;
+        feed.close();
+        if (seedFeedId == null)
+            return;
+        String[] seedFeed = new String[] { Long.toString(seedFeedId) };
+
+        HashMap<Long, Integer> categoryDeltas = new HashMap<>();
+        Cursor cursor = db.query(NEWS_ENTRY_TABLE, new String[] { NEWS_ENTRY_CATEGORY_ID },
+                NEWS_ENTRY_FEED_ID + " = ? AND " + NEWS_ENTRY_READ + " = 0", seedFeed, null, null, null);
+        while (cursor.moveToNext())
+            addDelta(categoryDeltas, cursor.isNull(0) ? null : cursor.getLong(0), -1);
+        cursor.close();
+        applyCategoryDeltas(categoryDeltas);
+
+        db.delete(NEWS_ENTRY_TABLE, NEWS_ENTRY_FEED_ID + " = ?", seedFeed);
+        db.delete(FEED_TABLE, FEED_ID + " = ?", seedFeed);
+        db.delete(CATEGORY_TABLE, CATEGORY_ID + " NOT IN (SELECT " + NEWS_ENTRY_CATEGORY_ID + " FROM " +
+                NEWS_ENTRY_TABLE + " WHERE " + NEWS_ENTRY_CATEGORY_ID + " IS NOT NULL)", null);
+        feedIds.remove(SEED_FEED_URL);
+        categoryIds.clear();
+    }
+
+    /**
+     * Looks up fingerprints, categories and read state of the given articles.
+     * Must be called with the database open.
+     * @param news Articles to look up
+     * @return Map from GUID to stored state for articles already in the database
+     */
+    private HashMap<String, StoredRow> getStoredRows(List<NewsEntry> news) {
+        if (guidFilter == null || guidFilter.isFull())
+            loadGuidFilter();
+
+        // Articles missing from the filter are new, no need to look them up
+        HashMap<String, StoredRow> rows = new HashMap<>();
+        ArrayList<String> guids = new ArrayList<>();
+        for (NewsEntry entry: news) {
+            if (entry.getGuid() != null && guidFilter.mightContain(entry.getGuid()))
+                guids.add(entry.getGuid());
+        }
+
+        String[] columns = { NEWS_ENTRY_GUID, NEWS_ENTRY_FINGERPRINT, NEWS_ENTRY_CATEGORY_ID, NEWS_ENTRY_READ,
+                NEWS_ENTRY_PICTURE_URL };
+        for (int start = 0; start < guids.size(); start += MAX_QUERY_ARGS) {
+            List<String> chunk = guids.subList(start, Math.min(guids.size(), start + MAX_QUERY_ARGS));
+            StringBuilder where = new StringBuilder(NEWS_ENTRY_GUID + " IN (");
+            for (int i = 0; i < chunk.size(); i++)
+                where.append(i == 0 ? "?" : ", ?");
+            where.append(")");
+
+            Cursor cursor = db.query(NEWS_ENTRY_TABLE, columns, where.toString(),
+                    chunk.toArray(new String[0]), null, null, null);
+            while (cursor.moveToNext()) {
+                StoredRow row = new StoredRow();
+                row.fingerprint = cursor.isNull(1) ? null : cursor.getLong(1);
+                row.categoryId = cursor.isNull(2) ? null : cursor.getLong(2);
+                row.read = cursor.getInt(3) != 0;
+                row.pictureUrl = cursor.getString(4);
+                rows.put(cursor.getString(0), row);
+            }
+            cursor.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Fills the GUID filter from the GUID index.
+     * Sized for twice the stored articles, so it lasts while the archive grows.
+     * Must be called with the database open.
+     */
+    private void loadGuidFilter() {
+        Cursor cursor = db.query(NEWS_ENTRY_TABLE, new String[] { NEWS_ENTRY_GUID },
+                NEWS_ENTRY_GUID + " IS NOT NULL", null, null, null, null);
+        guidFilter = new BloomFilter(Math.max(MIN_GUID_FILTER_CAPACITY, cursor.getCount() * 2),
+                guidFalsePositiveRate);
+        while (cursor.moveToNext()) {
+            guidFilter.add(cursor.getString(0));
+        }
+        cursor.close();
+    }
+
+    /**
+     * Loads the GUID filter in advance, so the first refresh doesn't wait for it.
+     * Call from a background thread.
+     */
+    public synchronized void prepareGuidFilter() {
+        if (guidFilter != null)
+            return;
+        this.openReadableDB();
+        loadGuidFilter();
         this.closeDB();
+    }
+
+    /**
+     * Copies the seed database from the assets on first launch, so the first
+     * screen has articles before the first refresh. The seed was ingested by
+     * this class from the feed snapshot into SEED_FEED_URL, and the first
+     * ingest of a real feed replaces those articles.
+     * Runs before the database is first opened, whichever thread that is on,
+     * as the helper would create an empty database otherwise.
+     * Does nothing if there's a database already or no seed is bundled.
+     * Must be called with the object locked.
+     * @return True if the seed was installed
+     */
+    private boolean installSeed() {
+        if (seedChecked)
+            return false;
+        seedChecked = true;
+        File target = context.getDatabasePath(DB_NAME);
+        if (seedAsset == null || target.exists())
+            return false;
+
+        InputStream input;
+        try {
+            input = context.getAssets().open(seedAsset);
+        } catch (IOException e) {
+            // Built without a feed snapshot
+            return false;
+        }
+        File tmp = new File(target.getPath() + ".seed");
+        boolean installed = false;
+        try {
+            target.getParentFile().mkdirs();
+            OutputStream output = new FileOutputStream(tmp);
+            try {
+                byte[] data = new byte[64 * 1024];
+                int count;
+                while ((count = input.read(data)) != -1)
+                    output.write(data, 0, count);
+            } finally {
+                output.close();
+            }
+            installed = tmp.renameTo(target);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (!installed)
+                tmp.delete();
+        }
+        return installed;
+    }
 
-        return rowID;
+    /**
+     * Reads a description, decompressing it if it's stored compressed
+     * @param cursor Cursor at the row
+     * @param column Index of the description column
+     * @return Description, empty if it's damaged
+     */
+    private static String readDescription(Cursor cursor, int column) {
+        if (cursor.getType(column) != Cursor.FIELD_TYPE_BLOB)
+            return cursor.getString(column);
+        String description = DescriptionCodec.decompress(cursor.getBlob(column));
+        return description == null ? "" : description;
     }
 
     /**
-     * Retrieves an article by its GUID
+     * Retrieves an article by its GUID.
+     * The only read of the description, which is decompressed here.
      * @param guid GUID to look up
      * @return News entry or NULL
      */
-    public NewsEntry getByGuid(String guid) {
+    public synchronized NewsEntry getByGuid(String guid) {
+        // A definite miss needs no query
+        if (guidFilter != null && !guidFilter.mightContain(guid))
+            return null;
+
         NewsEntry newsEntry = null;
         String where = NEWS_ENTRY_GUID + "= ? ";
         this.openReadableDB();
@@ -180,7 +931,7 @@ public class NewsEntryDB {
             String pubdate = cursor.getString(NEWS_ENTRY_PUB_DATE_COL);
             String author = cursor.getString(NEWS_ENTRY_AUTHOR_COL);
             String category = cursor.getString(NEWS_ENTRY_CATEGORY_COL);
-            String description = cursor.getString(NEWS_ENTRY_DESCRIPTION_COL);
+            String description = readDescription(cursor, NEWS_ENTRY_DESCRIPTION_COL);
             newsEntry = new NewsEntry(title, link, guid, pubdate, author, category, description);
         }
         cursor.close();
@@ -193,44 +944,202 @@ public class NewsEntryDB {
      * @param newsEntry Entry to update
      * @return Returns number of rows updated
      */
-    public int updateNewsEntry(NewsEntry newsEntry) {
-        ContentValues cv = new ContentValues();
-        cv.put(NEWS_ENTRY_TITLE, newsEntry.getTitle());
-        cv.put(NEWS_ENTRY_LINK, newsEntry.getLink());
-        cv.put(NEWS_ENTRY_PUB_DATE, newsEntry.getPubDate());
-        cv.put(NEWS_ENTRY_AUTHOR, newsEntry.getAuthor());
-        cv.put(NEWS_ENTRY_CATEGORY, newsEntry.getCategory());
-        cv.put(NEWS_ENTRY_DESCRIPTION, newsEntry.getDescription());
+    public synchronized int updateNewsEntry(NewsEntry newsEntry) {
+        this.openWriteableDB();
+        ContentValues cv = toContentValues(newsEntry);
 
         String where = NEWS_ENTRY_GUID + "= ? ";
-        this.openWriteableDB();
         int rowCount = db.update(NEWS_ENTRY_TABLE, cv, where,  new String[] { newsEntry.getGuid() });
         this.closeDB();
         return rowCount;
     }
 
     /**
-     * Get all news entries
-     * @return List of news entries in the database
+     * Get summaries of all news entries
+     * @return List of news entries in the database, newest first
+     */
+    public synchronized List<NewsEntry> getNewsEntries() {
+        return queryNewsEntries(null, null);
+    }
+
+    /**
+     * Get news entries of one section, using the category and time index
+     * @param categoryId ID of the category
+     * @return List of news entries in the category, newest first
+     */
+    public synchronized List<NewsEntry> getNewsEntriesByCategory(long categoryId) {
+        return queryNewsEntries(NEWS_ENTRY_CATEGORY_ID + " = ?", new String[] { Long.toString(categoryId) });
+    }
+
+    /**
+     * Stores previews of downloaded pictures in all articles showing them
+     * @param previews Encoded previews by picture URL
+     */
+    @Override
+    public synchronized void onPreviewsCreated(Map<String, byte[]> previews) {
+        this.openWriteableDB();
+        db.beginTransaction();
+        try {
+            for (Map.Entry<String, byte[]> preview: previews.entrySet()) {
+                ContentValues cv = new ContentValues();
+                cv.put(NEWS_ENTRY_PREVIEW, preview.getValue());
+                db.update(NEWS_ENTRY_TABLE, cv, NEWS_ENTRY_PICTURE_URL + " = ?",
+                        new String[] { preview.getKey() });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            this.closeDB();
+        }
+    }
+
+    /**
+     * Marks an article as read and decrements the unread counters it belongs to
+     * @param guid GUID of the article
+     * @return True if the article was unread before
+     */
+    public synchronized boolean markRead(String guid) {
+        boolean changed = false;
+        this.openWriteableDB();
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(NEWS_ENTRY_TABLE,
+                    new String[] { NEWS_ENTRY_CATEGORY_ID, NEWS_ENTRY_FEED_ID },
+                    NEWS_ENTRY_GUID + " = ? AND " + NEWS_ENTRY_READ + " = 0",
+                    new String[] { guid }, null, null, null);
+            if (cursor.moveToFirst()) {
+                Long categoryId = cursor.isNull(0) ? null : cursor.getLong(0);
+                Long feedId = cursor.isNull(1) ? null : cursor.getLong(1);
+
+                ContentValues cv = new ContentValues();
+                cv.put(NEWS_ENTRY_READ, 1);
+                db.update(NEWS_ENTRY_TABLE, cv, NEWS_ENTRY_GUID + " = ?", new String[] { guid });
+
+                HashMap<Long, Integer> categoryDeltas = new HashMap<>();
+                addDelta(categoryDeltas, categoryId, -1);
+                applyCategoryDeltas(categoryDeltas);
+                if (feedId != null)
+                    applyFeedDelta(feedId, -1);
+                changed = true;
+            }
+            cursor.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            this.closeDB();
+        }
+        return changed;
+    }
+
+    /**
+     * Reads the maintained unread counter of a feed
+     * @param feedUrl URL of the feed
+     * @return Number of unread articles
      */
-    public ArrayList<NewsEntry> getNewsEntries() {
-        ArrayList<NewsEntry> newsEntries = new ArrayList<NewsEntry>();
+    public synchronized int getFeedUnreadCount(String feedUrl) {
+        int count = 0;
+        this.openReadableDB();
+        Cursor cursor = db.query(FEED_TABLE, new String[] { FEED_UNREAD },
+                FEED_URL + " = ?", new String[] { feedUrl }, null, null, null);
+        if (cursor.moveToFirst())
+            count = cursor.getInt(0);
+        cursor.close();
+        this.closeDB();
+        return count;
+    }
 
+    /**
+     * Reads the maintained unread counters of all feeds, the seed included
+     * @return Number of unread articles
+     */
+    public synchronized int getUnreadCount() {
+        int count = 0;
+        this.openReadableDB();
+        Cursor cursor = db.rawQuery("SELECT SUM(" + FEED_UNREAD + ") FROM " + FEED_TABLE, null);
+        if (cursor.moveToFirst())
+            count = cursor.getInt(0);
+        cursor.close();
+        this.closeDB();
+        return count;
+    }
+
+    /**
+     * Get a single category
+     * @param categoryId ID of the category
+     * @return Category with its unread count, or NULL
+     */
+    public synchronized Category getCategory(long categoryId) {
+        Category category = null;
         this.openReadableDB();
-        Cursor cursor = db.query(NEWS_ENTRY_TABLE, null, null, null, null, null, null, null);
+        Cursor cursor = db.query(CATEGORY_TABLE, null, CATEGORY_ID + " = ?",
+                new String[] { Long.toString(categoryId) }, null, null, null);
         if (cursor.moveToFirst()) {
-            while (!cursor.isAfterLast()) {
-                String title = cursor.getString(NEWS_ENTRY_TITLE_COL);
-                String link = cursor.getString(NEWS_ENTRY_LINK_COL);
-                String guid = cursor.getString(NEWS_ENTRY_GUID_COL);
-                String pubdate = cursor.getString(NEWS_ENTRY_PUB_DATE_COL);
-                String author = cursor.getString(NEWS_ENTRY_AUTHOR_COL);
-                String category = cursor.getString(NEWS_ENTRY_CATEGORY_COL);
-                String description = cursor.getString(NEWS_ENTRY_DESCRIPTION_COL);
-                NewsEntry newsEntry = new NewsEntry(title, link, guid, pubdate, author, category, description);
-                newsEntries.add(newsEntry);
-                cursor.moveToNext();
+            category = new Category(cursor.getLong(CATEGORY_ID_COL), cursor.getString(CATEGORY_NAME_COL),
+                    cursor.getInt(CATEGORY_UNREAD_COL));
+        }
+        cursor.close();
+        this.closeDB();
+        return category;
+    }
+
+    /**
+     * Get all categories
+     * @return List of categories sorted by name, with unread counts
+     */
+    public synchronized ArrayList<Category> getCategories() {
+        ArrayList<Category> categories = new ArrayList<>();
+        this.openReadableDB();
+        Cursor cursor = db.query(CATEGORY_TABLE, null, null, null, null, null, CATEGORY_NAME);
+        while (cursor.moveToNext()) {
+            categories.add(new Category(cursor.getLong(CATEGORY_ID_COL), cursor.getString(CATEGORY_NAME_COL),
+                    cursor.getInt(CATEGORY_UNREAD_COL)));
+        }
+        cursor.close();
+        this.closeDB();
+        return categories;
+    }
+
+    /**
+     * Reads article summaries, newest first.
+     * Only the columns shown in the list are read, the description stays in the
+     * database until the article is opened. Categories are shared between rows,
+     * and large lists are stored column by column.
+     * @param where Selection, or NULL for all entries
+     * @param whereArgs Selection arguments
+     * @return List of news entries
+     */
+    private List<NewsEntry> queryNewsEntries(String where, String[] whereArgs) {
+        String[] columns = { NEWS_ENTRY_TITLE, NEWS_ENTRY_LINK, NEWS_ENTRY_GUID, NEWS_ENTRY_CATEGORY,
+                NEWS_ENTRY_PICTURE_URL, NEWS_ENTRY_PUB_TIME, NEWS_ENTRY_READ, NEWS_ENTRY_PREVIEW };
+
+        this.openReadableDB();
+        Cursor cursor = db.query(NEWS_ENTRY_TABLE, columns, where, whereArgs, null, null,
+                NEWS_ENTRY_PUB_TIME + " DESC", null);
+        List<NewsEntry> newsEntries;
+        if (cursor.getCount() >= COLUMNAR_MIN_ROWS) {
+            NewsColumns list = new NewsColumns(cursor.getCount());
+            while (cursor.moveToNext()) {
+                list.add(cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getString(3),
+                        cursor.getString(4), cursor.getLong(5), cursor.getInt(6) != 0, cursor.getBlob(7));
+            }
+            list.trimToSize();
+            newsEntries = list;
+        } else {
+            StringPool categories = new StringPool();
+            ArrayList<NewsEntry> list = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                NewsEntry newsEntry = new NewsEntry();
+                newsEntry.setTitle(cursor.getString(0));
+                newsEntry.setLink(cursor.getString(1));
+                newsEntry.setGuid(cursor.getString(2));
+                newsEntry.setCategory(categories.get(cursor.getString(3)));
+                newsEntry.setPictureUrl(cursor.getString(4));
+                newsEntry.setPublishedTime(cursor.getLong(5));
+                newsEntry.setRead(cursor.getInt(6) != 0);
+                newsEntry.setPreview(cursor.getBlob(7));
+                list.add(newsEntry);
             }
+            newsEntries = list;
         }
         cursor.close();
         this.closeDB();
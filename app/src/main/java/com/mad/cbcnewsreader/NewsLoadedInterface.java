@@ -0,0 +1,21 @@
+/**
+ * @file   NewsLoadedInterface.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-02
+ * @brief  Interface to handle news loaded from the database.
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.util.List;
+
+/**
+ * Interface used by NewsLoader when news are read from the database
+ */
+public interface NewsLoadedInterface {
+    /**
+     * Called after news are loaded and sorted
+     * @param news Sorted list of news
+     */
+    void onNewsLoaded(List<NewsEntry> news);
+}
@@ -0,0 +1,90 @@
+/**
+ * @file   NewsLoader.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-02
+ * @brief  Loads news from the database in background
+ */
+
+package com.mad.cbcnewsreader;
+
+import android.os.AsyncTask;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+/**
+ * Reads news from the database off the UI thread
+ */
+public class NewsLoader extends AsyncTask<Void, Void, List<NewsEntry>> {
+
+    /**
+     * Interface to call when news are loaded.
+     * Weak, so a running load doesn't keep a destroyed screen alive.
+     */
+    private WeakReference<NewsLoadedInterface> cb;
+
+    /**
+     * Database to read from
+     */
+    private NewsEntryDB db;
+
+    /**
+     * Snapshot to refresh after loading, or NULL to leave it as is
+     */
+    private ListSnapshot snapshot;
+
+    /**
+     * Category to load, or ALL_CATEGORIES
+     */
+    private long categoryId;
+
+    /**
+     * Category ID standing for the unfiltered list
+     */
+    public static final long ALL_CATEGORIES = 0;
+
+    /**
+     * Creates a NewsLoader
+     * @param cb Interface to use for notifications
+     * @param db Database to read from
+     * @param snapshot Snapshot to rewrite with the loaded news, or NULL
+     * @param categoryId Category to load, or ALL_CATEGORIES
+     */
+    NewsLoader(NewsLoadedInterface cb, NewsEntryDB db, ListSnapshot snapshot, long categoryId) {
+        this.cb = new WeakReference<>(cb);
+        this.db = db;
+        this.snapshot = snapshot;
+        this.categoryId = categoryId;
+    }
+
+    /**
+     * Loads the news, already sorted by the database
+     * @param voids Unused
+     * @return Sorted list of news
+     */
+    @Override
+    protected List<NewsEntry> doInBackground(Void... voids) {
+        // The first load opens the database, upgrades included, before the screen reads it
+        db.prepare();
+        if (categoryId != ALL_CATEGORIES)
+            return db.getNewsEntriesByCategory(categoryId);
+
+        List<NewsEntry> news = db.getNewsEntries();
+        if (snapshot != null)
+            snapshot.write(news);
+        // Ready before the first refresh needs it
+        db.prepareGuidFilter();
+        return news;
+    }
+
+    /**
+     * Passes loaded news to the callback
+     * @param news Sorted list of news
+     */
+    @Override
+    protected void onPostExecute(List<NewsEntry> news) {
+        NewsLoadedInterface listener = cb.get();
+        if (listener != null)
+            listener.onNewsLoaded(news);
+    }
+}
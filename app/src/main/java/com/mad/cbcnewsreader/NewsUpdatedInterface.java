@@ -14,8 +14,9 @@ import java.util.ArrayList;
  */
 public interface NewsUpdatedInterface {
     /**
-     * Called after news are downloaded and parsed
+     * Called after news are downloaded, parsed and stored
      * @param news List of parsed news
+     * @param result Counts of articles actually written to the database
      */
-    void onNewsUpdated(ArrayList<NewsEntry> news);
+    void onNewsUpdated(ArrayList<NewsEntry> news, IngestResult result);
 }
@@ -14,6 +14,8 @@ import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.util.ArrayList;
 
@@ -23,9 +25,30 @@ import java.util.ArrayList;
 public class NewsUpdater extends AsyncTask<Void, Void, ArrayList<NewsEntry>> {
 
     /**
-     * Interface to call when news have finished downloading
+     * URL of the news feed
      */
-    private NewsUpdatedInterface cb;
+    public static final String FEED_URL = "https://www.cbc.ca/cmlink/rss-topstories";
+
+    /**
+     * URL of the feed this updater downloads
+     */
+    private String feedUrl;
+
+    /**
+     * Database to store downloaded news in
+     */
+    private NewsEntryDB db;
+
+    /**
+     * Counts of articles written by the last ingest
+     */
+    private IngestResult result;
+
+    /**
+     * Interface to call when news have finished downloading.
+     * Weak, so a running update doesn't keep a destroyed screen alive.
+     */
+    private WeakReference<NewsUpdatedInterface> cb;
 
     /**
      * Asynchronous picture downloader
@@ -36,78 +59,112 @@ public class NewsUpdater extends AsyncTask<Void, Void, ArrayList<NewsEntry>> {
      * Creates a NewsUpdater
      * @param cb Interface to use for notifications
      * @param downloader Picture downloader
+     * @param db Database to store news in
+     */
+    NewsUpdater(NewsUpdatedInterface cb, PictureDownloader downloader, NewsEntryDB db) {
+        this(cb, downloader, db, FEED_URL);
+    }
+
+    /**
+     * Creates a NewsUpdater for another feed
+     * @param cb Interface to use for notifications
+     * @param downloader Picture downloader
+     * @param db Database to store news in
+     * @param feedUrl URL of the feed to download
      */
-    NewsUpdater(NewsUpdatedInterface cb, PictureDownloader downloader) {
-        this.cb = cb;
+    NewsUpdater(NewsUpdatedInterface cb, PictureDownloader downloader, NewsEntryDB db, String feedUrl) {
+        this.cb = new WeakReference<>(cb);
         this.downloader = downloader;
+        this.db = db;
+        this.feedUrl = feedUrl;
     }
 
     /**
-     * The background task which downloads the news
+     * The background task which downloads the news and stores them
      * @param voids Unused
      * @return List of news downloaded and parsed
      */
     @Override
     protected ArrayList<NewsEntry> doInBackground(Void... voids) {
+        ArrayList<NewsEntry> news = parseFeed(feedUrl);
+
+        // Unchanged articles are skipped by their fingerprint
+        result = db.ingestNewsEntries(feedUrl, news);
+
+        return news;
+    }
+
+    /**
+     * Downloads and parses an RSS feed
+     * @param feedUrl URL of the feed
+     * @return List of news in feed order, empty if the feed couldn't be read
+     */
+    static ArrayList<NewsEntry> parseFeed(String feedUrl) {
         ArrayList<NewsEntry> news = new ArrayList<>();
 
         try {
-            URL url = new URL("https://www.cbc.ca/cmlink/rss-topstories");
+            URL url = new URL(feedUrl);
 
             XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
             factory.setNamespaceAware(false);
             XmlPullParser xpp = factory.newPullParser();
 
-            xpp.setInput(url.openConnection().getInputStream(), "UTF_8");
-
-            NewsEntry entry = null;
-
-            int eventType = xpp.getEventType();
-            while (eventType != XmlPullParser.END_DOCUMENT) {
-                if (xpp.getEventType() == XmlPullParser.START_TAG) {
-                    String name = xpp.getName();
-                    // Next news element
-                    if (name.equals("item")) {
-                        // Insert the previous entry
-                        if (entry != null) {
-                            news.add(entry);
+            InputStream input = url.openConnection().getInputStream();
+            try {
+                xpp.setInput(input, "UTF-8");
+
+                NewsEntry entry = null;
+                // Articles share a handful of authors and categories
+                StringPool pool = new StringPool();
+
+                int eventType = xpp.getEventType();
+                while (eventType != XmlPullParser.END_DOCUMENT) {
+                    if (xpp.getEventType() == XmlPullParser.START_TAG) {
+                        String name = xpp.getName();
+                        // Next news element
+                        if (name.equals("item")) {
+                            // Insert the previous entry
+                            if (entry != null) {
+                                news.add(entry);
+                            }
+                            entry = new NewsEntry();
                         }
-                        entry = new NewsEntry();
-                    }
-                    if (entry != null) {
-                        switch (name) {
-                            case "title":
-                                entry.setTitle(xpp.nextText());
-                                break;
-                            case "link":
-                                entry.setLink(xpp.nextText());
-                                break;
-                            case "description":
-                                entry.setDescription(xpp.nextText());
-                                break;
-                            case "guid":
-                                entry.setGuid(xpp.nextText());
-                                break;
-                            case "pubDate":
-                                entry.setPubDate(xpp.nextText());
-                                break;
-                            case "author":
-                                entry.setAuthor(xpp.nextText());
-                                break;
-                            case "category":
-                                entry.setCategory(xpp.nextText());
-                                break;
+                        if (entry != null) {
+                            switch (name) {
+                                case "title":
+                                    entry.setTitle(xpp.nextText());
+                                    break;
+                                case "link":
+                                    entry.setLink(xpp.nextText());
+                                    break;
+                                case "description":
+                                    entry.setDescription(xpp.nextText());
+                                    break;
+                                case "guid":
+                                    entry.setGuid(xpp.nextText());
+                                    break;
+                                case "pubDate":
+                                    entry.setPubDate(xpp.nextText());
+                                    break;
+                                case "author":
+                                    entry.setAuthor(pool.get(xpp.nextText()));
+                                    break;
+                                case "category":
+                                    entry.setCategory(pool.get(xpp.nextText()));
+                                    break;
+                            }
                         }
                     }
+
+                    eventType = xpp.next();
                 }
 
-                eventType = xpp.next();
+                // Insert last news entry
+                if (entry != null)
+                    news.add(entry);
+            } finally {
+                input.close();
             }
-
-            // Insert last news entry
-            if (entry != null)
-                news.add(entry);
-
         } catch (IOException | XmlPullParserException e) {
             e.printStackTrace();
         }
@@ -121,13 +178,18 @@ public class NewsUpdater extends AsyncTask<Void, Void, ArrayList<NewsEntry>> {
      */
     @Override
     protected void onPostExecute(ArrayList<NewsEntry> news) {
-        // Prepare picture downloader to download pictures
-        for (NewsEntry entry: news)
-            downloader.EnsureCached(entry.getPictureUrl());
-        // Create async download job
-        downloader.BatchDownload();
+        // On metered connections and in power save mode pictures are only downloaded once shown
+        if (DownloadPolicies.current().isBackgroundPictures()) {
+            // Prepare picture downloader to download pictures
+            for (NewsEntry entry: news)
+                downloader.EnsureCached(entry.getPictureUrl());
+            // Create async download job
+            downloader.BatchDownload();
+        }
 
-        cb.onNewsUpdated(news);
+        NewsUpdatedInterface listener = cb.get();
+        if (listener != null)
+            listener.onNewsUpdated(news, result);
     }
 
 }
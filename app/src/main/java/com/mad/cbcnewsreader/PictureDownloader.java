@@ -7,37 +7,138 @@
 
 package com.mad.cbcnewsreader;
 
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.OnLifecycleEvent;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Downloads and caches pictures on disk asynchronously
+ * Downloads and caches pictures on disk asynchronously.
+ * Every picture is kept as the original and as a display-sized thumbnail,
+ * both packed into the segments of a PictureStore; list rows are served
+ * from thumbnails only. Pictures are stored by content through a
+ * ContentStore, so a picture served under several URLs is stored, decoded
+ * and kept in memory once. Only recently shown thumbnails are kept in
+ * memory, the others are decoded from the store when they're shown again.
+ * The HTTP freshness of every picture is stored next to it; stale pictures
+ * keep being shown while they're revalidated in background with a
+ * conditional request.
  */
 public class PictureDownloader {
 
     /**
-     * Directory to store cached pictures in
+     * Suffix of thumbnail files of the old one-file-per-picture cache
+     */
+    private static final String THUMB_SUFFIX = ".thumb";
+
+    /**
+     * Suffix of files being written by the old cache
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Length of a picture key, a hex SHA-256
+     */
+    private static final int KEY_LENGTH = 64;
+
+    /**
+     * Name of the picture store directory inside the cache directory
+     */
+    private static final String STORE_DIR = "pictures";
+
+    /**
+     * Store key prefix of original pictures stored by URL key, before pictures were stored by content
+     */
+    private static final String ORIGINAL_PREFIX = "o/";
+
+    /**
+     * Store key prefix of thumbnails stored by URL key, before pictures were stored by content
+     */
+    private static final String THUMB_PREFIX = "t/";
+
+    /**
+     * Store key prefix of freshness metadata
+     */
+    private static final String FRESHNESS_PREFIX = "m/";
+
+    /**
+     * Cache directory, holds the picture store
      */
     private File cacheDir;
 
     /**
-     * Map of cached pictures
+     * Packed storage of originals and thumbnails, opened in background
+     */
+    private volatile PictureStore store;
+
+    /**
+     * Pictures by content in the store, with URL keys linked to them
      */
-    private final HashMap<String, Bitmap> pictureCache = new HashMap<>();
+    private volatile ContentStore contents;
+
+    /**
+     * Makes thumbnails of downloaded pictures
+     */
+    private Thumbnailer thumbnailer;
+
+    /**
+     * Part of the heap thumbnails in memory may take, as a divisor
+     */
+    private static final int THUMBNAIL_CACHE_HEAP_DIVISOR = 8;
+
+    /**
+     * Thumbnails in memory by content key, one for all URLs of the same picture.
+     * Sized in bytes, least recently used thumbnails are dropped first.
+     */
+    private final LruCache<String, Bitmap> pictureCache = new LruCache<String, Bitmap>(
+            (int) (Runtime.getRuntime().maxMemory() / THUMBNAIL_CACHE_HEAP_DIVISOR)) {
+        @Override
+        protected int sizeOf(String contentKey, Bitmap bmp) {
+            return bmp.getByteCount();
+        }
+    };
+
+    /**
+     * Content keys of all pictures in the store by URL key, whether their thumbnail is in memory or not.
+     * Guarded by pictureCache.
+     */
+    private final HashMap<String, String> contentKeys = new HashMap<>();
+
+    /**
+     * URL keys of pictures whose thumbnails are being loaded into memory.
+     * Only accessed from the UI thread.
+     */
+    private final HashSet<String> loadingThumbnails = new HashSet<>();
+
+    /**
+     * Times at which cached pictures become stale, by key, in milliseconds since epoch
+     */
+    private final HashMap<String, Long> expiryTimes = new HashMap<>();
 
     /**
      * List of unique URLs to download in the next job
@@ -45,9 +146,72 @@ public class PictureDownloader {
     private HashSet<String> downloadUrls = new HashSet<>();
 
     /**
-     * Interface to notify when pictures have finished downloading
+     * URLs which failed to download, held back with exponential backoff
+     */
+    private final FailedUrlCache failedUrls = new FailedUrlCache();
+
+    /**
+     * Downloaded pictures waiting for the decode pool, at most
+     */
+    private static final int DECODE_BACKLOG = 8;
+
+    /**
+     * Thumbnails waiting to be published, at most
      */
-    private PicturesDownloadedInterface cb;
+    private static final int PUBLISH_BACKLOG = 16;
+
+    /**
+     * Download, decode and publish stages of downloads, publishing on the database pool as it writes previews
+     */
+    private final PicturePipeline pipeline = new PicturePipeline(TaskExecutors.network(),
+            new BoundedStage(TaskExecutors.decode(), DECODE_BACKLOG),
+            new BoundedStage(TaskExecutors.database(), PUBLISH_BACKLOG));
+
+    /**
+     * Previews made by the decode stage and not written yet, by picture URL
+     */
+    private final HashMap<String, byte[]> pendingPreviews = new HashMap<>();
+
+    /**
+     * Held while previews are written, so every publish waits for the batch holding its preview
+     */
+    private final Object previewWriteLock = new Object();
+
+    /**
+     * Runs the end of downloads on the UI thread
+     */
+    private final Handler mainThread = new Handler(Looper.getMainLooper());
+
+    /**
+     * Downloads in progress or queued, by URL.
+     * Only accessed from the UI thread.
+     */
+    private final HashMap<String, DownloadImageTask> pendingTasks = new HashMap<>();
+
+    /**
+     * Key of the full-size picture in memory, only the one on the article screen is kept
+     */
+    private String fullPictureKey;
+
+    /**
+     * The full-size picture, NULL while it's loading
+     */
+    private Bitmap fullPicture;
+
+    /**
+     * Whether the full-size picture is being decoded
+     */
+    private boolean fullPictureLoading;
+
+    /**
+     * Receiver of previews of downloaded pictures, may be NULL
+     */
+    private PreviewsCreatedInterface previewListener;
+
+    /**
+     * Screens to notify when pictures have finished downloading
+     */
+    private final ListenerRegistry<PicturesDownloadedInterface> listeners = new ListenerRegistry<>();
 
     /**
      * Singleton implementation
@@ -63,31 +227,397 @@ public class PictureDownloader {
     }
 
     /**
-     * Initializes the downloader
+     * Initializes the downloader once per process.
+     * Only the application context is kept, so no activity is retained.
      * @param ctx Android context
-     * @param cb Interface to notify
+     * @param previewListener Receiver of previews of downloaded pictures, called in background
      */
-    public static void Initialize(Context ctx, PicturesDownloadedInterface cb) {
+    public static void Initialize(Context ctx, PreviewsCreatedInterface previewListener) {
+        if (instance != null)
+            return;
         instance = new PictureDownloader();
-        instance.cacheDir = ctx.getCacheDir();
-        instance.cb = cb;
-        instance.LoadCachedPictures();
+        instance.previewListener = previewListener;
+        instance.cacheDir = ctx.getApplicationContext().getCacheDir();
+        instance.thumbnailer = new Thumbnailer(
+                ctx.getResources().getDimensionPixelSize(R.dimen.thumbnail_width),
+                ctx.getResources().getDimensionPixelSize(R.dimen.thumbnail_height));
+        instance.new LoadCachedPicturesTask()
+                .executeOnExecutor(TaskExecutors.decode().withPriority(Priority.VISIBLE));
+    }
+
+    /**
+     * Registers a screen to be notified when pictures are downloaded.
+     * The listener is removed and the screen's downloads are cancelled
+     * when the owner is destroyed.
+     * @param owner Screen owning the listener
+     * @param listener Interface to notify
+     */
+    public void AddListener(LifecycleOwner owner, PicturesDownloadedInterface listener) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED)
+            return;
+        listeners.add(owner, listener);
+        lifecycle.addObserver(new OwnerObserver(owner));
+    }
+
+    /**
+     * Unregisters a listener
+     * @param listener Interface to stop notifying
+     */
+    public void RemoveListener(PicturesDownloadedInterface listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notifies all registered screens that pictures were downloaded
+     */
+    private void NotifyListeners() {
+        for (PicturesDownloadedInterface listener: listeners.getListeners())
+            listener.onPicturesDownloaded();
+    }
+
+    /**
+     * Cancels downloads started on behalf of a screen
+     * @param owner Screen which owns the downloads
+     */
+    private void CancelOwnedTasks(Object owner) {
+        Iterator<Map.Entry<String, DownloadImageTask>> it = pendingTasks.entrySet().iterator();
+        while (it.hasNext()) {
+            DownloadImageTask task = it.next().getValue();
+            if (task.owner == owner) {
+                task.Cancel();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Cleans up after a screen once it's destroyed
+     */
+    private class OwnerObserver implements LifecycleObserver {
+        /**
+         * Observed screen
+         */
+        private final LifecycleOwner owner;
+
+        /**
+         * Creates the observer
+         * @param owner Screen to observe
+         */
+        OwnerObserver(LifecycleOwner owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Drops listeners and downloads of the destroyed screen
+         */
+        @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+        void onDestroy() {
+            listeners.removeOwner(owner);
+            CancelOwnedTasks(owner);
+            owner.getLifecycle().removeObserver(this);
+        }
+    }
+
+    /**
+     * Opens the picture store on first use
+     * @return Picture store, or NULL if it can't be opened
+     */
+    private synchronized PictureStore Store() {
+        if (store == null) {
+            try {
+                store = new PictureStore(new File(cacheDir, STORE_DIR), PictureStore.DEFAULT_SEGMENT_BYTES);
+                contents = new ContentStore(store);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return store;
     }
 
     /**
-     * Loads cached pictures from the disk
+     * Indexes the pictures in the store and loads their freshness.
+     * Thumbnails aren't decoded here, as the store holds far more pictures
+     * than fit in memory; they're decoded when shown. Pictures no URL links
+     * to any more are removed.
+     * Runs in background, as the cache grows with the archive.
      */
     private void LoadCachedPictures() {
+        PictureStore store = Store();
+        if (store == null)
+            return;
+        ContentStore contents = this.contents;
+        MigrateCacheFiles(store);
+        MigrateUrlKeyedPictures(store, contents);
+
+        for (String key: contents.names()) {
+            String contentKey = null;
+            try {
+                contentKey = contents.resolve(key);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            if (contentKey == null) {
+                // Linked to missing content, drop it so it's downloaded again
+                DropPicture(store, contents, key, null);
+                continue;
+            }
+            synchronized (pictureCache) {
+                contentKeys.put(key, contentKey);
+            }
+
+            PictureFreshness freshness = ReadFreshness(store, key);
+            if (freshness == null) {
+                // Cached before freshness was kept, give it the default lifetime once
+                freshness = new PictureFreshness(null, null,
+                        System.currentTimeMillis() + PictureFreshness.DEFAULT_MAX_AGE_MS);
+                StoreFreshness(store, key, freshness);
+            }
+            synchronized (expiryTimes) {
+                expiryTimes.put(key, freshness.getExpiresAt());
+            }
+        }
+
+        // Pictures replaced since, under all their URLs
+        try {
+            contents.removeUnreferenced();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Decodes the stored thumbnail of a picture into memory.
+     * A stored picture which can't be decoded is dropped, so it's downloaded again.
+     * Runs in background.
+     * @param key Key of the picture URL
+     * @return True if the thumbnail is in memory now
+     */
+    private boolean LoadCachedThumbnail(String key) {
+        PictureStore store = Store();
+        if (store == null)
+            return false;
+        ContentStore contents = this.contents;
+        String contentKey;
+        Bitmap bmp;
+        try {
+            contentKey = contents.resolve(key);
+            if (contentKey == null)
+                return false;
+            bmp = LoadThumbnail(contents, contentKey);
+        } catch (IOException e) {
+            Log.w(MainActivity.LOG_TAG, "Thumbnail not loaded: " + e.getMessage());
+            return false;
+        }
+
+        if (bmp == null) {
+            // Not a picture
+            DropPicture(store, contents, key, contentKey);
+            return false;
+        }
+        synchronized (pictureCache) {
+            pictureCache.put(contentKey, bmp);
+            contentKeys.put(key, contentKey);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a stored picture and its freshness, so it's downloaded again
+     * @param store Store holding the picture
+     * @param contents Content layer of the store
+     * @param key Key of the picture URL
+     * @param contentKey Key of the picture content, NULL to only unlink the URL
+     */
+    private void DropPicture(PictureStore store, ContentStore contents, String key, String contentKey) {
+        try {
+            synchronized (contents) {
+                contents.unlink(key);
+                store.remove(FRESHNESS_PREFIX + key);
+                if (contentKey != null)
+                    contents.removeContent(contentKey);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        synchronized (pictureCache) {
+            contentKeys.remove(key);
+        }
+        synchronized (expiryTimes) {
+            expiryTimes.remove(key);
+        }
+    }
+
+    /**
+     * Gets the thumbnail of stored content: the one in memory if another URL
+     * of the same picture loaded it, or decoded from the store, or made from
+     * the original if it has none.
+     * @param contents Store holding the picture
+     * @param contentKey Key of the picture content
+     * @return Thumbnail, or NULL if the picture can't be decoded
+     * @throws IOException If reading failed
+     */
+    private Bitmap LoadThumbnail(ContentStore contents, String contentKey) throws IOException {
+        Bitmap shared = pictureCache.get(contentKey);
+        if (shared != null)
+            return shared;
+        byte[] thumb = contents.readDerived(contentKey);
+        if (thumb != null)
+            return BitmapFactory.decodeByteArray(thumb, 0, thumb.length);
+        byte[] original = contents.readContent(contentKey);
+        return original == null ? null : StoreThumbnail(contents, contentKey, original, original.length);
+    }
+
+    /**
+     * Moves pictures stored by URL key into the content store.
+     * Thumbnails are kept, and identical pictures end up stored once.
+     * @param store Store with the pictures
+     * @param contents Content layer of the store
+     */
+    private void MigrateUrlKeyedPictures(PictureStore store, ContentStore contents) {
+        for (String name: store.keys()) {
+            if (!name.startsWith(ORIGINAL_PREFIX) && !name.startsWith(THUMB_PREFIX))
+                continue;
+            try {
+                if (name.startsWith(ORIGINAL_PREFIX)) {
+                    String key = name.substring(ORIGINAL_PREFIX.length());
+                    byte[] original = store.read(name);
+                    byte[] thumb = store.read(THUMB_PREFIX + key);
+                    if (original != null) {
+                        String contentKey = ContentStore.contentKey(original);
+                        synchronized (contents) {
+                            contents.putContent(contentKey, original);
+                            if (thumb != null && !contents.hasDerived(contentKey))
+                                contents.putDerived(contentKey, thumb);
+                            contents.link(key, contentKey);
+                        }
+                    }
+                }
+                // Thumbnails without an original were never shown either
+                store.remove(name);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads the freshness metadata of a cached picture
+     * @param store Store holding the picture
+     * @param key Key of the picture
+     * @return Freshness, or NULL if there's none or it can't be read
+     */
+    private static PictureFreshness ReadFreshness(PictureStore store, String key) {
+        try {
+            return PictureFreshness.decode(store.read(FRESHNESS_PREFIX + key));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the freshness metadata of a cached picture
+     * @param store Store holding the picture
+     * @param key Key of the picture
+     * @param freshness Freshness to store
+     * @return True if stored
+     */
+    private boolean StoreFreshness(PictureStore store, String key, PictureFreshness freshness) {
+        try {
+            store.put(FRESHNESS_PREFIX + key, freshness.encode());
+        } catch (IOException e) {
+            Log.w(MainActivity.LOG_TAG, "Picture freshness not stored: " + e.getMessage());
+            return false;
+        }
+        synchronized (expiryTimes) {
+            expiryTimes.put(key, freshness.getExpiresAt());
+        }
+        return true;
+    }
+
+    /**
+     * Moves pictures of the old one-file-per-picture cache into the store
+     * @param store Store to move pictures into
+     */
+    private void MigrateCacheFiles(PictureStore store) {
         File[] files = cacheDir.listFiles();
+        if (files == null)
+            return;
         for (File file: files) {
-            if (file.isFile()) {
-                Bitmap bmp = LoadBitmapFromFile(file.getAbsolutePath());
-                if (bmp != null)
-                    pictureCache.put(file.getName(), bmp);
+            if (!file.isFile())
+                continue;
+
+            String name = file.getName();
+            if (name.endsWith(TMP_SUFFIX)) {
+                file.delete();
+                continue;
             }
+
+            String key;
+            if (name.length() == KEY_LENGTH + THUMB_SUFFIX.length() && name.endsWith(THUMB_SUFFIX))
+                key = THUMB_PREFIX + name.substring(0, KEY_LENGTH);
+            else if (name.length() == KEY_LENGTH)
+                key = ORIGINAL_PREFIX + name;
+            else
+                continue;
+
+            try {
+                if (!store.contains(key))
+                    store.put(key, ReadFile(file));
+                file.delete();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads a whole file
+     * @param file File to read
+     * @return File contents
+     * @throws IOException If reading failed
+     */
+    private static byte[] ReadFile(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            int count;
+            while (offset < data.length && (count = input.read(data, offset, data.length - offset)) != -1)
+                offset += count;
+            if (offset < data.length)
+                throw new IOException("Unexpected end of " + file);
+            return data;
+        } finally {
+            input.close();
         }
     }
 
+    /**
+     * Makes a thumbnail of an original picture and puts it into the store
+     * @param contents Store to put the thumbnail into
+     * @param contentKey Key of the picture content
+     * @param original Array with the original picture
+     * @param length Length of the original picture
+     * @return Thumbnail bitmap, or NULL if the picture couldn't be decoded
+     */
+    private Bitmap StoreThumbnail(ContentStore contents, String contentKey, byte[] original, int length) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // Smaller thumbnails on metered connections and in power save mode
+        Bitmap bmp = thumbnailer.create(original, length, output,
+                DownloadPolicies.current().getThumbnailQuality());
+        if (bmp == null)
+            return null;
+        try {
+            contents.putDerived(contentKey, output.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return bmp;
+    }
+
     /**
      * Converts picture URL to a unique hashmap key
      * @param url URL of the picture
@@ -110,141 +640,572 @@ public class PictureDownloader {
     }
 
     /**
-     * Converts picture URL to its path on the disk
+     * Adds URL to download list if it's not downloaded yet or is stale,
+     * and didn't fail recently
+     * @param url URL to retrieve
+     */
+    public void EnsureCached(String url) {
+        // The picture may be on disk but not loaded into memory yet
+        if ((!IsCached(url) || IsStale(url)) && !failedUrls.isBlocked(url)) {
+            downloadUrls.add(url);
+        }
+    }
+
+    /**
+     * Downloads all of the requested URLs in background.
+     * Every picture is queued on its own, so the ones scrolled into view can be promoted.
+     * Must be called from the UI thread.
+     */
+    public void BatchDownload() {
+        for (String url: downloadUrls)
+            RequestPicture(null, url, Priority.BACKGROUND);
+        downloadUrls.clear();
+    }
+
+    /**
+     * Prefetches pictures around the visible part of the list.
+     * Queued or running prefetches for URLs missing from the list are cancelled,
+     * so the bandwidth goes to the pictures which are about to be shown.
+     * Must be called from the UI thread.
+     * @param owner Screen requesting the pictures, its downloads are cancelled when it's destroyed
+     * @param urls URLs to prefetch, most urgent first
+     * @param visibleCount Number of URLs at the start of the list which are on screen now
+     */
+    public void Prefetch(Object owner, List<String> urls, int visibleCount) {
+        HashSet<String> wanted = new HashSet<>(urls);
+
+        // Cancel loads for rows which scrolled away
+        Iterator<Map.Entry<String, DownloadImageTask>> it = pendingTasks.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, DownloadImageTask> entry = it.next();
+            if (entry.getValue().owner == owner && !wanted.contains(entry.getKey())) {
+                entry.getValue().Cancel();
+                it.remove();
+            }
+        }
+
+        for (int i = 0; i < urls.size(); i++)
+            RequestPicture(owner, urls.get(i), i < visibleCount ? Priority.VISIBLE : Priority.PREFETCH);
+    }
+
+    /**
+     * Starts downloading a single picture, unless it's cached or failed recently.
+     * A stale cached picture is revalidated in background instead, and keeps being shown meanwhile.
+     * A picture which is already queued with a lower priority is moved up the queue instead.
+     * Must be called from the UI thread.
+     * @param owner Screen requesting the picture, the download is cancelled when it's destroyed;
+     *              NULL for background downloads
      * @param url URL of the picture
-     * @return Path inside cache directory on disk
+     * @param priority How urgently the picture is needed
      */
-    private String urlToFilename(String url) {
-        return cacheDir + "/" + urlToKey(url);
+    public void RequestPicture(Object owner, String url, Priority priority) {
+        DownloadImageTask pending = pendingTasks.get(url);
+        if (pending != null) {
+            if (!pending.revalidation && priority.compareTo(pending.getPriority()) < 0)
+                pipeline.promote(pending, priority);
+            return;
+        }
+        if (failedUrls.isBlocked(url))
+            return;
+        boolean revalidation = IsCached(url);
+        if (revalidation) {
+            if (!IsStale(url))
+                return;
+            // Not urgent and not tied to the screen, the stale picture is shown meanwhile
+            owner = null;
+            priority = Priority.BACKGROUND;
+        }
+        DownloadImageTask task = new DownloadImageTask(url, owner, priority);
+        task.revalidation = revalidation;
+        pendingTasks.put(url, task);
+        pipeline.start(task);
     }
 
     /**
-     * Adds URL to download list if it's not downloaded yet
-     * @param url URL to retrieve
+     * Checks whether the picture is in memory or on disk
+     * @param url URL of the picture
+     * @return True if the picture doesn't need to be downloaded
      */
-    public void EnsureCached(String url) {
+    private boolean IsCached(String url) {
         String key = urlToKey(url);
-        Boolean exists;
         synchronized (pictureCache) {
-            exists = pictureCache.containsKey(key);
-        }
-        if (!exists) {
-            downloadUrls.add(url);
+            if (contentKeys.containsKey(key))
+                return true;
         }
+        // Until the store is opened the cached pictures aren't known, they're loaded soon anyway
+        ContentStore contents = this.contents;
+        return contents != null && contents.isLinked(key);
     }
 
     /**
-     * Downloads all of the requested URLs in background
+     * Checks whether a cached picture should be revalidated
+     * @param url URL of the picture
+     * @return True if the picture expired, false if it's fresh or its freshness isn't loaded yet
      */
-    public void BatchDownload() {
-        DownloadImageTask task = new DownloadImageTask(downloadUrls.toArray(new String[0]));
-        task.execute();
-        downloadUrls.clear();
+    private boolean IsStale(String url) {
+        Long expiresAt;
+        synchronized (expiryTimes) {
+            expiresAt = expiryTimes.get(urlToKey(url));
+        }
+        return expiresAt != null && System.currentTimeMillis() >= expiresAt;
     }
 
     /**
-     * Retrieves a cached bitmap using its URL
+     * Retrieves a cached thumbnail using its URL.
+     * A stored thumbnail which isn't in memory is loaded in background, and
+     * listeners are notified once it's loaded.
+     * Must be called from the UI thread.
      * @param url URL of the picture
-     * @return Bitmap or NULL if not downloaded yet
+     * @return Bitmap or NULL if not downloaded or not in memory yet
      */
     public Bitmap GetBitmap(String url) {
         String key = urlToKey(url);
-        Bitmap res = null;
+        String contentKey;
         synchronized (pictureCache) {
-            if (pictureCache.containsKey(key)) {
-                res = pictureCache.get(key);
-            }
+            contentKey = contentKeys.get(key);
         }
+        if (contentKey == null)
+            return null;
+        Bitmap res = pictureCache.get(contentKey);
+        if (res == null)
+            LoadThumbnails(Collections.singletonList(key));
         return res;
     }
 
     /**
-     * Loads bitmap from a file on the disk
-     * @param path Path to the bitmap
-     * @return Bitmap object or NULL of failed to load
+     * Loads stored thumbnails into memory in background, such as those of the
+     * rows shown first, before the stored pictures are indexed.
+     * Listeners are notified once they're loaded.
+     * Must be called from the UI thread.
+     * @param urls URLs of the pictures, ones which aren't stored are skipped
+     */
+    public void Preload(List<String> urls) {
+        ArrayList<String> keys = new ArrayList<>();
+        for (String url: urls)
+            keys.add(urlToKey(url));
+        LoadThumbnails(keys);
+    }
+
+    /**
+     * Starts loading thumbnails into memory, unless they're being loaded already
+     * @param keys Keys of the picture URLs
+     */
+    private void LoadThumbnails(List<String> keys) {
+        ArrayList<String> missing = new ArrayList<>();
+        for (String key: keys) {
+            if (loadingThumbnails.add(key))
+                missing.add(key);
+        }
+        if (!missing.isEmpty())
+            new LoadThumbnailsTask(missing)
+                    .executeOnExecutor(TaskExecutors.decode().withPriority(Priority.VISIBLE));
+    }
+
+    /**
+     * Retrieves the full-size picture for the article screen.
+     * Starts loading it from the disk if it isn't in memory yet;
+     * listeners are notified once it's loaded.
+     * @param url URL of the picture
+     * @return Bitmap or NULL if not loaded yet
      */
-    private Bitmap LoadBitmapFromFile(String path) {
+    public Bitmap GetFullBitmap(String url) {
+        String key = urlToKey(url);
+        if (key.equals(fullPictureKey) && (fullPicture != null || fullPictureLoading))
+            return fullPicture;
+
+        fullPictureKey = key;
+        fullPicture = null;
+        fullPictureLoading = false;
+        ContentStore contents = this.contents;
+        if (contents != null && contents.isLinked(key)) {
+            fullPictureLoading = true;
+            new LoadFullPictureTask(key)
+                    .executeOnExecutor(TaskExecutors.decode().withPriority(Priority.IMMEDIATE));
+        }
+        return null;
+    }
+
+    /**
+     * Downloads a picture, or revalidates it if it's cached.
+     * If the cached picture didn't change only its freshness is updated.
+     * @param url URL to download
+     * @param task Task doing the download, checked for cancellation
+     * @return Verified picture bytes with their freshness, NULL if it failed or the cached one is still valid
+     */
+    private PictureFetcher.Response Download(String url, DownloadImageTask task) {
+        PictureStore store = Store();
+        if (store == null)
+            return null;
+
+        String key = urlToKey(url);
+        PictureFreshness cached = contents.isLinked(key) ? ReadFreshness(store, key) : null;
+        PictureFetcher.Response response;
         try {
-            InputStream input = new FileInputStream(path);
-            return BitmapFactory.decodeStream(input);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            response = PictureFetcher.fetch(url, cached, task);
+        } catch (IOException e) {
+            DownloadFailed(url, e);
+            return null;
+        }
+        if (response == null)
+            return null;
+        if (response.isNotModified()) {
+            StoreFreshness(store, key, response.getFreshness());
+            failedUrls.recordSuccess(url);
             return null;
         }
+        return response;
     }
 
     /**
-     * Downloads a bitmap from URL to a cached file
-     * @param url URL to download
-     * @return Downloaded bitmap object
+     * Decodes a downloaded picture and puts the original and its thumbnail into the store.
+     * A picture already stored under another URL is only linked to that URL,
+     * and its thumbnail is reused instead of decoding the picture again.
+     * Nothing is stored unless the picture decodes, and the link, which
+     * marks the picture as cached, is written after the original and the thumbnail.
+     * @param url URL of the picture
+     * @param contentKey Key of the picture content
+     * @param response Downloaded picture
+     * @return Thumbnail of the picture, NULL if it can't be decoded or stored
      */
-    private Bitmap DownloadToFile(String url) {
+    private Bitmap DecodeToStore(String url, String contentKey, PictureFetcher.Response response) {
+        PictureStore store = Store();
+        ContentStore contents = this.contents;
+        String key = urlToKey(url);
+
+        Bitmap bmp = null;
         try {
-            InputStream input = new java.net.URL(url).openStream();
-            OutputStream output = new FileOutputStream(urlToFilename(url));
-            byte data[] = new byte[4096];
+            if (contents.hasDerived(contentKey))
+                bmp = LoadThumbnail(contents, contentKey);
+            if (bmp != null) {
+                synchronized (contents) {
+                    // Unless removed meanwhile
+                    if (contents.hasDerived(contentKey))
+                        contents.link(key, contentKey);
+                    else
+                        bmp = null;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(MainActivity.LOG_TAG, "Picture not cached: " + e.getMessage());
+            return null;
+        }
 
-            int count;
-            while ((count = input.read(data)) != -1) {
-                output.write(data, 0, count);
+        if (bmp == null) {
+            // The downloaded array goes to the decoder and the store as is
+            byte[] original = response.getBody();
+            // Smaller thumbnails on metered connections and in power save mode
+            ByteArrayOutputStream thumbnail = new ByteArrayOutputStream();
+            bmp = thumbnailer.create(original, response.getLength(), thumbnail,
+                    DownloadPolicies.current().getThumbnailQuality());
+            if (bmp == null) {
+                DownloadFailed(url, new IOException("Picture can't be decoded: " + url));
+                return null;
             }
 
-            output.close();
-            input.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            try {
+                synchronized (contents) {
+                    contents.putContent(contentKey, original, response.getLength());
+                    contents.putDerived(contentKey, thumbnail.toByteArray());
+                    contents.link(key, contentKey);
+                }
+            } catch (IOException e) {
+                Log.w(MainActivity.LOG_TAG, "Picture not cached: " + e.getMessage());
+                return null;
+            }
         }
+        StoreFreshness(store, key, response.getFreshness());
+        failedUrls.recordSuccess(url);
+        return bmp;
+    }
 
-        return LoadBitmapFromFile(urlToFilename(url));
+    /**
+     * Writes all previews made so far in one transaction.
+     * Previews made while a write is running are left for the next call,
+     * so a busy publish stage writes them in batches.
+     */
+    private void PublishPreviews() {
+        synchronized (previewWriteLock) {
+            HashMap<String, byte[]> batch;
+            synchronized (pendingPreviews) {
+                if (pendingPreviews.isEmpty())
+                    return;
+                batch = new HashMap<>(pendingPreviews);
+                pendingPreviews.clear();
+            }
+            previewListener.onPreviewsCreated(batch);
+        }
     }
 
     /**
-     * Task to download images in background.
-     * Based on https://stackoverflow.com/a/9288544
+     * Holds back a URL which failed to download.
+     * Failures to reach the network at all say nothing about the URL, they're only logged.
+     * @param url URL which failed
+     * @param e Reason of the failure
      */
-    private class DownloadImageTask extends AsyncTask<Void, Void, Void> {
+    private void DownloadFailed(String url, IOException e) {
+        if (e instanceof UnknownHostException || e instanceof ConnectException) {
+            Log.w(MainActivity.LOG_TAG, "Picture download failed, network unavailable: " + e.getMessage());
+            return;
+        }
+        long delay = failedUrls.recordFailure(url);
+        Log.w(MainActivity.LOG_TAG, "Picture download failed, retrying in " + delay / 1000 + " s: "
+                + e.getMessage());
+    }
+
+    /**
+     * Task to index cached pictures in background
+     */
+    private class LoadCachedPicturesTask extends AsyncTask<Void, Void, Void> {
         /**
-         * List of URLs to download
+         * Runs task in background
+         * @param voids Unused
+         * @return Unused
          */
-        private String[] urls;
+        @Override
+        protected Void doInBackground(Void... voids) {
+            LoadCachedPictures();
+            return null;
+        }
+
+        /**
+         * Notifies the callback interface once cached pictures are indexed,
+         * so the shown rows load their thumbnails
+         * @param v Unused
+         */
+        @Override
+        protected void onPostExecute(Void v) {
+            NotifyListeners();
+        }
+    }
+
+    /**
+     * Task to load stored thumbnails into memory
+     */
+    private class LoadThumbnailsTask extends AsyncTask<Void, Void, Boolean> {
+        /**
+         * Keys of the picture URLs
+         */
+        private final List<String> keys;
 
         /**
          * Constructs the task
-         * @param urls URLs to download
+         * @param keys Keys of the picture URLs
          */
-        DownloadImageTask(String[] urls) {
-            this.urls = urls;
+        LoadThumbnailsTask(List<String> keys) {
+            this.keys = keys;
         }
 
         /**
-         * Runs task in background
+         * Decodes the thumbnails in background
          * @param voids Unused
-         * @return Unused
+         * @return True if any thumbnail was loaded
          */
         @Override
-        protected Void doInBackground(Void... voids) {
-            for (String url: urls) {
-                Bitmap bmp = DownloadToFile(url);
+        protected Boolean doInBackground(Void... voids) {
+            boolean loaded = false;
+            for (String key: keys)
+                loaded |= LoadCachedThumbnail(key);
+            return loaded;
+        }
+
+        /**
+         * Notifies the callback interface once thumbnails are loaded
+         * @param loaded Whether any thumbnail was loaded
+         */
+        @Override
+        protected void onPostExecute(Boolean loaded) {
+            loadingThumbnails.removeAll(keys);
+            if (loaded)
+                NotifyListeners();
+        }
+    }
+
+    /**
+     * Task to load the full-size picture of the article screen
+     */
+    private class LoadFullPictureTask extends AsyncTask<Void, Void, Bitmap> {
+        /**
+         * Key of the picture
+         */
+        private String key;
+
+        /**
+         * Constructs the task
+         * @param key Key of the picture
+         */
+        LoadFullPictureTask(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Decodes the picture in background
+         * @param voids Unused
+         * @return Decoded picture
+         */
+        @Override
+        protected Bitmap doInBackground(Void... voids) {
+            try {
+                String contentKey = contents.resolve(key);
+                byte[] data = contentKey == null ? null : contents.readContent(contentKey);
+                return data == null ? null : BitmapFactory.decodeByteArray(data, 0, data.length);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        /**
+         * Keeps the picture unless another one was requested meanwhile
+         * @param bmp Decoded picture
+         */
+        @Override
+        protected void onPostExecute(Bitmap bmp) {
+            if (!key.equals(fullPictureKey))
+                return;
+            fullPictureLoading = false;
+            fullPicture = bmp;
+            if (bmp != null)
+                NotifyListeners();
+        }
+    }
+
+    /**
+     * Download of a picture, passed through the stages of the pipeline:
+     * downloading, decoding and storing, then publishing the thumbnail and preview.
+     * Based on https://stackoverflow.com/a/9288544
+     */
+    private class DownloadImageTask extends PicturePipeline.Job implements PictureFetcher.Cancellation {
+        /**
+         * URL to download
+         */
+        private final String url;
+
+        /**
+         * Screen which requested the picture, or NULL for background downloads.
+         * Only accessed from the UI thread.
+         */
+        private Object owner;
+
+        /**
+         * Whether a stale cached picture is revalidated, which is never promoted
+         */
+        private boolean revalidation;
+
+        /**
+         * Whether the download is no longer wanted
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * Downloaded picture, handed from the download to the decode stage
+         */
+        private PictureFetcher.Response response;
+
+        /**
+         * Thumbnail, handed from the decode to the publish stage
+         */
+        private Bitmap bmp;
+
+        /**
+         * Key of the picture content
+         */
+        private String contentKey;
+
+        /**
+         * Constructs the task
+         * @param url URL to download
+         * @param owner Screen requesting the picture, or NULL for background downloads
+         * @param priority How urgently the picture is needed
+         */
+        DownloadImageTask(String url, Object owner, Priority priority) {
+            super(priority);
+            this.url = url;
+            this.owner = owner;
+        }
 
-                if (bmp == null)
-                    continue;
+        /**
+         * Stops the download if it didn't finish yet.
+         * A downloaded picture is still decoded and stored.
+         */
+        void Cancel() {
+            cancelled = true;
+            owner = null;
+        }
+
+        /**
+         * Checks whether the download is no longer wanted
+         * @return True once cancelled
+         */
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Download stage
+         * @return True if a new picture was downloaded
+         */
+        @Override
+        protected boolean download() {
+            if (!cancelled)
+                response = Download(url, this);
+            return response != null;
+        }
 
-                String key = urlToKey(url);
-                synchronized (pictureCache) {
-                    pictureCache.put(key, bmp);
+        /**
+         * Decode stage, decodes and stores the picture and makes its preview
+         * @return True if the picture was decoded and stored
+         */
+        @Override
+        protected boolean decode() {
+            contentKey = ContentStore.contentKey(response.getBody(), response.getLength());
+            bmp = DecodeToStore(url, contentKey, response);
+            response = null;
+            if (bmp == null)
+                return false;
+            if (previewListener != null) {
+                synchronized (pendingPreviews) {
+                    pendingPreviews.put(url, PicturePreview.create(bmp));
                 }
             }
+            return true;
+        }
 
-            return null;
+        /**
+         * Publish stage, makes the thumbnail and its preview visible
+         */
+        @Override
+        protected void publish() {
+            synchronized (pictureCache) {
+                // A picture cached under another URL meanwhile keeps its bitmap
+                if (pictureCache.get(contentKey) == null)
+                    pictureCache.put(contentKey, bmp);
+                String replaced = contentKeys.put(urlToKey(url), contentKey);
+                // A revalidation which changed the picture drops the old bitmap, unless another URL shows it
+                if (replaced != null && !replaced.equals(contentKey) && !contentKeys.containsValue(replaced))
+                    pictureCache.remove(replaced);
+            }
+            bmp = null;
+            if (previewListener != null)
+                PublishPreviews();
         }
 
         /**
-         * Calls the callback interface once all images are downloaded
-         * @param v Unused
+         * Forgets the download on the UI thread and notifies the screens
+         * @param published Whether a new picture was published
          */
         @Override
-        protected void onPostExecute(Void v) {
-            cb.onPicturesDownloaded();
+        protected void finish(final boolean published) {
+            mainThread.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (pendingTasks.get(url) == DownloadImageTask.this)
+                        pendingTasks.remove(url);
+                    owner = null;
+                    if (published)
+                        NotifyListeners();
+                }
+            });
         }
     }
 
@@ -0,0 +1,260 @@
+/**
+ * @file   PictureFetcher.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-18
+ * @brief  Downloads and verifies picture bytes
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Downloads a picture into memory and checks it before anything is stored:
+ * the server must answer 200, the body must be as long as announced and
+ * must start with the signature of a known picture format. Anything else
+ * is reported as an IOException, so a failed download never reaches the cache.
+ * The body is read straight into one array, sized by Content-Length when the
+ * server sends it; the verifier, the decoder and the store all work on that
+ * array, so the picture isn't copied between network and disk.
+ * A cached picture is revalidated with a conditional request, which costs
+ * only a header exchange when the picture didn't change.
+ */
+public class PictureFetcher {
+
+    /**
+     * Connection and read timeout
+     */
+    public static final int TIMEOUT_MS = 15000;
+
+    /**
+     * Largest picture accepted
+     */
+    public static final int MAX_PICTURE_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Largest single read from the network
+     */
+    private static final int READ_BYTES = 64 * 1024;
+
+    /**
+     * Initial size of the array for pictures of unknown length
+     */
+    private static final int UNKNOWN_LENGTH_BYTES = 32 * 1024;
+
+    /**
+     * Lets a download be abandoned halfway
+     */
+    public interface Cancellation {
+        /**
+         * Checks whether the download is no longer wanted
+         * @return True to stop downloading
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * Outcome of a download
+     */
+    public static class Response {
+        /**
+         * Array starting with the picture bytes, NULL if not modified
+         */
+        private final byte[] body;
+
+        /**
+         * Length of the picture in the array
+         */
+        private final int length;
+
+        /**
+         * Freshness of the picture
+         */
+        private final PictureFreshness freshness;
+
+        /**
+         * Creates a response
+         * @param body Array starting with the picture bytes, NULL if not modified
+         * @param length Length of the picture in the array
+         * @param freshness Freshness of the picture
+         */
+        Response(byte[] body, int length, PictureFreshness freshness) {
+            this.body = body;
+            this.length = length;
+            this.freshness = freshness;
+        }
+
+        /**
+         * Picture getter. The array may be longer than the picture if the
+         * server didn't announce its length, see getLength().
+         * @return Array starting with the picture bytes, or NULL if the cached picture is still valid
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Length getter
+         * @return Length of the picture in the array
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Checks whether the cached picture is still valid
+         * @return True for a 304 response
+         */
+        public boolean isNotModified() {
+            return body == null;
+        }
+
+        /**
+         * Freshness getter
+         * @return New freshness of the picture
+         */
+        public PictureFreshness getFreshness() {
+            return freshness;
+        }
+    }
+
+    /**
+     * Not instantiated
+     */
+    private PictureFetcher() {
+    }
+
+    /**
+     * Downloads a picture
+     * @param url URL of the picture
+     * @param cancellation Checked between reads
+     * @return Picture bytes, or NULL if cancelled
+     * @throws IOException If the download failed or isn't a complete picture
+     */
+    public static byte[] fetch(String url, Cancellation cancellation) throws IOException {
+        Response response = fetch(url, null, cancellation);
+        if (response == null)
+            return null;
+        byte[] picture = response.getBody();
+        if (picture.length != response.getLength()) {
+            picture = new byte[response.getLength()];
+            System.arraycopy(response.getBody(), 0, picture, 0, picture.length);
+        }
+        return picture;
+    }
+
+    /**
+     * Downloads a picture, or revalidates a cached one
+     * @param url URL of the picture
+     * @param cached Freshness of the cached picture, or NULL if it isn't cached
+     * @param cancellation Checked between reads
+     * @return Response, or NULL if cancelled
+     * @throws IOException If the download failed or isn't a complete picture
+     */
+    public static Response fetch(String url, PictureFreshness cached, Cancellation cancellation)
+            throws IOException {
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        if (cached != null) {
+            if (cached.getEtag() != null)
+                connection.setRequestProperty("If-None-Match", cached.getEtag());
+            if (cached.getLastModified() != null)
+                connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+        }
+        try {
+            if (connection instanceof HttpURLConnection) {
+                int code = ((HttpURLConnection) connection).getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null && cached.hasValidators())
+                    return new Response(null, 0, cached.revalidatedBy(
+                            PictureFreshness.fromHeaders(connection, System.currentTimeMillis())));
+                if (code != HttpURLConnection.HTTP_OK)
+                    throw new IOException("HTTP " + code + " for " + url);
+            }
+
+            int expected = connection.getContentLength();
+            if (expected > MAX_PICTURE_BYTES)
+                throw new IOException("Picture of " + expected + " bytes is too large: " + url);
+
+            // Exactly the announced size, the stream ends there
+            byte[] picture = new byte[expected >= 0 ? expected : UNKNOWN_LENGTH_BYTES];
+            int length = 0;
+            InputStream input = connection.getInputStream();
+            try {
+                while (expected < 0 || length < expected) {
+                    if (length == picture.length) {
+                        if (length > MAX_PICTURE_BYTES)
+                            throw new IOException("Picture is too large: " + url);
+                        byte[] larger = new byte[Math.min(picture.length * 2, MAX_PICTURE_BYTES + 1)];
+                        System.arraycopy(picture, 0, larger, 0, length);
+                        picture = larger;
+                    }
+                    int count = input.read(picture, length, Math.min(READ_BYTES, picture.length - length));
+                    if (count == -1)
+                        break;
+                    if (cancellation.isCancelled())
+                        return null;
+                    length += count;
+                }
+            } finally {
+                input.close();
+            }
+
+            if (expected >= 0 && length != expected)
+                throw new IOException("Truncated picture, got " + length + " of " + expected
+                        + " bytes: " + url);
+            if (!isPicture(picture, length))
+                throw new IOException("Not a picture: " + url);
+            return new Response(picture, length, PictureFreshness.fromHeaders(connection, System.currentTimeMillis()));
+        } finally {
+            if (connection instanceof HttpURLConnection)
+                ((HttpURLConnection) connection).disconnect();
+        }
+    }
+
+    /**
+     * Checks the signature of a picture format the decoder understands
+     * @param data Downloaded bytes
+     * @return True for JPEG, PNG, GIF, WebP, BMP and ICO
+     */
+    static boolean isPicture(byte[] data) {
+        return isPicture(data, data.length);
+    }
+
+    /**
+     * Checks the signature of a picture format the decoder understands
+     * @param data Array starting with the downloaded bytes
+     * @param length Number of downloaded bytes
+     * @return True for JPEG, PNG, GIF, WebP, BMP and ICO
+     */
+    static boolean isPicture(byte[] data, int length) {
+        return startsWith(data, length, 0, 0xFF, 0xD8, 0xFF)
+                || startsWith(data, length, 0, 0x89, 'P', 'N', 'G')
+                || startsWith(data, length, 0, 'G', 'I', 'F', '8')
+                || (startsWith(data, length, 0, 'R', 'I', 'F', 'F') && startsWith(data, length, 8, 'W', 'E', 'B', 'P'))
+                || startsWith(data, length, 0, 'B', 'M')
+                || startsWith(data, length, 0, 0, 0, 1, 0);
+    }
+
+    /**
+     * Compares bytes at a position
+     * @param data Bytes to check
+     * @param length Number of valid bytes in data
+     * @param offset Position of the first byte
+     * @param expected Expected unsigned byte values
+     * @return True if all bytes match
+     */
+    private static boolean startsWith(byte[] data, int length, int offset, int... expected) {
+        if (length < offset + expected.length)
+            return false;
+        for (int i = 0; i < expected.length; i++) {
+            if ((data[offset + i] & 0xFF) != expected[i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * @file   PictureFreshness.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-18
+ * @brief  HTTP freshness metadata of a cached picture
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Validators and expiry time of a cached picture, taken from the response
+ * headers: ETag and Last-Modified are sent back in a conditional request once
+ * the picture is stale, and Cache-Control max-age or Expires decide when
+ * that is. Without either, the picture stays fresh for a tenth of its age
+ * at download time, at most DEFAULT_MAX_AGE_MS.
+ */
+public class PictureFreshness {
+
+    /**
+     * Freshness of pictures whose server doesn't say, and the cap of the heuristic
+     */
+    public static final long DEFAULT_MAX_AGE_MS = 24 * 60 * 60 * 1000;
+
+    /**
+     * Version of the encoded form
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * max-age directive of Cache-Control
+     */
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age\\s*=\\s*\"?(\\d+)");
+
+    /**
+     * Directives which require revalidation on every use. must-revalidate
+     * isn't one of them, it only forbids using the picture once stale.
+     */
+    private static final Pattern NO_CACHE = Pattern.compile("(?:^|[,\\s])(no-cache|no-store)(?:$|[,\\s=])");
+
+    /**
+     * Entity tag, or NULL
+     */
+    private final String etag;
+
+    /**
+     * Last-Modified header as received, or NULL
+     */
+    private final String lastModified;
+
+    /**
+     * Wall clock time at which the picture becomes stale, in milliseconds
+     */
+    private final long expiresAt;
+
+    /**
+     * Creates freshness metadata
+     * @param etag Entity tag, or NULL
+     * @param lastModified Last-Modified header, or NULL
+     * @param expiresAt Time at which the picture becomes stale, in milliseconds since epoch
+     */
+    public PictureFreshness(String etag, String lastModified, long expiresAt) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Reads freshness from the headers of a response
+     * @param connection Connection with the response
+     * @param now Current time in milliseconds since epoch
+     * @return Freshness of the response
+     */
+    public static PictureFreshness fromHeaders(URLConnection connection, long now) {
+        return parse(connection.getHeaderField("Cache-Control"), connection.getHeaderField("Expires"),
+                connection.getHeaderField("Date"), connection.getHeaderField("ETag"),
+                connection.getHeaderField("Last-Modified"), now);
+    }
+
+    /**
+     * Computes freshness from header values
+     * @param cacheControl Cache-Control header, or NULL
+     * @param expires Expires header, or NULL
+     * @param date Date header, or NULL
+     * @param etag ETag header, or NULL
+     * @param lastModified Last-Modified header, or NULL
+     * @param now Current time in milliseconds since epoch
+     * @return Freshness of the response
+     */
+    static PictureFreshness parse(String cacheControl, String expires, String date,
+                                  String etag, String lastModified, long now) {
+        long maxAge = DEFAULT_MAX_AGE_MS;
+        Matcher matcher = cacheControl == null ? null : MAX_AGE.matcher(cacheControl.toLowerCase(Locale.US));
+        long serverDate = parseDate(date);
+        if (cacheControl != null && NO_CACHE.matcher(cacheControl.toLowerCase(Locale.US)).find()) {
+            maxAge = 0;
+        } else if (matcher != null && matcher.find()) {
+            // Huge values only mean "forever"
+            String seconds = matcher.group(1);
+            maxAge = (seconds.length() > 9 ? Integer.MAX_VALUE : Long.parseLong(seconds)) * 1000;
+        } else if (expires != null) {
+            // Relative to the server clock, which may differ from ours; invalid dates mean expired
+            long expiry = parseDate(expires);
+            maxAge = expiry < 0 ? 0 : Math.max(0, expiry - (serverDate < 0 ? now : serverDate));
+        } else {
+            long modified = parseDate(lastModified);
+            if (modified >= 0)
+                maxAge = Math.min(DEFAULT_MAX_AGE_MS, Math.max(0, (serverDate < 0 ? now : serverDate) - modified) / 10);
+        }
+        return new PictureFreshness(etag, lastModified, now + maxAge);
+    }
+
+    /**
+     * Parses an HTTP date
+     * @param value Date in RFC 1123 format, or NULL
+     * @return Milliseconds since epoch, or -1 if missing or invalid
+     */
+    private static long parseDate(String value) {
+        if (value == null)
+            return -1;
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Applies a 304 response to the metadata of the cached picture.
+     * Servers may leave out validators which didn't change, those are kept.
+     * @param response Freshness read from the 304 response
+     * @return Freshness of the revalidated picture
+     */
+    public PictureFreshness revalidatedBy(PictureFreshness response) {
+        return new PictureFreshness(response.etag != null ? response.etag : etag,
+                response.lastModified != null ? response.lastModified : lastModified,
+                response.expiresAt);
+    }
+
+    /**
+     * Checks whether the picture should be revalidated
+     * @param now Current time in milliseconds since epoch
+     * @return True once the picture expired
+     */
+    public boolean isStale(long now) {
+        return now >= expiresAt;
+    }
+
+    /**
+     * Checks whether a conditional request can be made
+     * @return True if there's an ETag or Last-Modified to send
+     */
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Entity tag getter
+     * @return ETag header value, or NULL
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Last modification getter
+     * @return Last-Modified header value, or NULL
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Expiry time getter
+     * @return Time at which the picture becomes stale, in milliseconds since epoch
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Encodes the metadata to be stored next to the picture
+     * @return Encoded metadata
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeByte(VERSION);
+            output.writeLong(expiresAt);
+            writeString(output, etag);
+            writeString(output, lastModified);
+        } catch (IOException e) {
+            // Can't happen with an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes stored metadata
+     * @param data Encoded metadata
+     * @return Metadata, or NULL if the data is malformed
+     */
+    public static PictureFreshness decode(byte[] data) {
+        if (data == null)
+            return null;
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if (input.readByte() != VERSION)
+                return null;
+            long expiresAt = input.readLong();
+            String etag = readString(input);
+            String lastModified = readString(input);
+            return new PictureFreshness(etag, lastModified, expiresAt);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a string which may be NULL
+     * @param output Stream to write to
+     * @param value String or NULL
+     * @throws IOException If writing failed
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null)
+            output.writeUTF(value);
+    }
+
+    /**
+     * Reads a string written by writeString
+     * @param input Stream to read from
+     * @return String or NULL
+     * @throws IOException If the data is malformed
+     */
+    private static String readString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * @file   PicturePipeline.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-19
+ * @brief  Download, decode and publish stages of picture downloads
+ */
+
+package com.mad.cbcnewsreader;
+
+/**
+ * Runs picture downloads through three stages: downloading on the network
+ * pool, decoding and storing on the decode pool, and publishing on the
+ * database pool. The decode and publish stages have bounded backlogs, so a
+ * batch doesn't flood their pools, and handing over never waits, so no pool
+ * thread is held by a slower stage.
+ */
+public class PicturePipeline {
+
+    /**
+     * One picture going through the stages.
+     * Every stage but the last one can end the job early.
+     */
+    public abstract static class Job implements Runnable {
+        /**
+         * Pipeline running the job, set once it's started
+         */
+        private PicturePipeline pipeline;
+
+        /**
+         * Priority the job is queued with in every stage
+         */
+        private volatile Priority priority;
+
+        /**
+         * Constructs the job
+         * @param priority Priority to queue the job with
+         */
+        protected Job(Priority priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Priority getter
+         * @return Priority the job is queued with
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * Download stage, runs on the network pool
+         * @return True to pass the job to the decode stage
+         */
+        protected abstract boolean download();
+
+        /**
+         * Decode stage, runs on the decode pool
+         * @return True to pass the job to the publish stage
+         */
+        protected abstract boolean decode();
+
+        /**
+         * Publish stage, runs on the database pool
+         */
+        protected abstract void publish();
+
+        /**
+         * Called once the job is over, from the pool of its last stage
+         * @param published Whether the job went through all stages
+         */
+        protected abstract void finish(boolean published);
+
+        /**
+         * Runs the download stage and hands the job over to the decode stage
+         */
+        @Override
+        public final void run() {
+            if (!download()) {
+                finish(false);
+                return;
+            }
+            pipeline.decodeStage.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runDecode();
+                }
+            }, priority);
+        }
+
+        /**
+         * Runs the decode stage and hands the job over to the publish stage
+         */
+        private void runDecode() {
+            if (!decode()) {
+                finish(false);
+                return;
+            }
+            pipeline.publishStage.submit(new Runnable() {
+                @Override
+                public void run() {
+                    publish();
+                    finish(true);
+                }
+            }, priority);
+        }
+    }
+
+    /**
+     * Pool of the download stage
+     */
+    private final PriorityExecutor network;
+
+    /**
+     * Decode stage
+     */
+    private final BoundedStage decodeStage;
+
+    /**
+     * Publish stage
+     */
+    private final BoundedStage publishStage;
+
+    /**
+     * Creates the pipeline
+     * @param network Pool of the download stage
+     * @param decodeStage Decode stage
+     * @param publishStage Publish stage
+     */
+    public PicturePipeline(PriorityExecutor network, BoundedStage decodeStage, BoundedStage publishStage) {
+        this.network = network;
+        this.decodeStage = decodeStage;
+        this.publishStage = publishStage;
+    }
+
+    /**
+     * Queues a job on the network pool
+     * @param job Job to run, not started yet
+     */
+    public void start(Job job) {
+        job.pipeline = this;
+        network.execute(job, job.priority);
+    }
+
+    /**
+     * Raises the priority of a job which didn't start downloading yet
+     * @param job Job to promote
+     * @param priority New priority, also used by its later stages
+     * @return True if the job was requeued with the new priority
+     */
+    public boolean promote(Job job, Priority priority) {
+        if (!network.promote(job, priority))
+            return false;
+        job.priority = priority;
+        return true;
+    }
+
+    /**
+     * Decode stage getter
+     * @return Decode stage
+     */
+    public BoundedStage getDecodeStage() {
+        return decodeStage;
+    }
+
+    /**
+     * Publish stage getter
+     * @return Publish stage
+     */
+    public BoundedStage getPublishStage() {
+        return publishStage;
+    }
+}
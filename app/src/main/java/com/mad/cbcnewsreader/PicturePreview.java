@@ -0,0 +1,99 @@
+/**
+ * @file   PicturePreview.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-16
+ * @brief  Tiny colour previews of article pictures
+ */
+
+package com.mad.cbcnewsreader;
+
+import android.graphics.Bitmap;
+
+/**
+ * Reduces a picture to a 4x3 grid of RGB565 colours, 24 bytes in all.
+ * Stretched over the thumbnail area with bitmap filtering, the grid
+ * renders as a soft gradient of the picture's colours, shown until the
+ * real thumbnail is loaded.
+ */
+public class PicturePreview {
+
+    /**
+     * Columns of the colour grid
+     */
+    public static final int WIDTH = 4;
+
+    /**
+     * Rows of the colour grid
+     */
+    public static final int HEIGHT = 3;
+
+    /**
+     * Size of an encoded preview
+     */
+    public static final int BYTES = WIDTH * HEIGHT * 2;
+
+    /**
+     * Not instantiated
+     */
+    private PicturePreview() {
+    }
+
+    /**
+     * Computes the preview of a picture
+     * @param picture Decoded picture, usually the thumbnail
+     * @return Encoded preview
+     */
+    public static byte[] create(Bitmap picture) {
+        Bitmap grid = Bitmap.createScaledBitmap(picture, WIDTH, HEIGHT, true);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        grid.getPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        if (grid != picture)
+            grid.recycle();
+        return encode(pixels);
+    }
+
+    /**
+     * Packs ARGB colours as big-endian RGB565
+     * @param pixels Colours of the grid, row by row
+     * @return Encoded preview
+     */
+    static byte[] encode(int[] pixels) {
+        byte[] preview = new byte[pixels.length * 2];
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            int rgb565 = ((pixel >> 8) & 0xF800) | ((pixel >> 5) & 0x07E0) | ((pixel >> 3) & 0x001F);
+            preview[i * 2] = (byte) (rgb565 >> 8);
+            preview[i * 2 + 1] = (byte) rgb565;
+        }
+        return preview;
+    }
+
+    /**
+     * Unpacks RGB565 colours into opaque ARGB
+     * @param preview Encoded preview
+     * @return Colours of the grid, row by row
+     */
+    static int[] decode(byte[] preview) {
+        int[] pixels = new int[preview.length / 2];
+        for (int i = 0; i < pixels.length; i++) {
+            int rgb565 = ((preview[i * 2] & 0xFF) << 8) | (preview[i * 2 + 1] & 0xFF);
+            int r = (rgb565 >> 11) & 0x1F;
+            int g = (rgb565 >> 5) & 0x3F;
+            int b = rgb565 & 0x1F;
+            // Repeat the high bits so white stays white
+            pixels[i] = 0xFF000000 | ((r << 3 | r >> 2) << 16) | ((g << 2 | g >> 4) << 8) | (b << 3 | b >> 2);
+        }
+        return pixels;
+    }
+
+    /**
+     * Renders a preview as a tiny bitmap, to be scaled up by the view
+     * @param preview Encoded preview
+     * @return Bitmap of the colour grid, or NULL if the preview is malformed
+     */
+    public static Bitmap toBitmap(byte[] preview) {
+        if (preview == null || preview.length != BYTES)
+            return null;
+        return Bitmap.createBitmap(decode(preview), WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    }
+}
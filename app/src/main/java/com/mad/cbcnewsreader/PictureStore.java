@@ -0,0 +1,511 @@
+/**
+ * @file   PictureStore.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-15
+ * @brief  Packed, memory-mapped storage of cached pictures
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only store of pictures packed into a few large segment files.
+ * Pictures are found through an in-memory index from key to segment, offset
+ * and length, and are read through memory-mapped segments. Replaced and
+ * removed pictures leave dead space behind, which is reclaimed by copying
+ * the live pictures of a mostly dead segment into the current one.
+ *
+ * Record layout: magic, flags byte, key length (short), key bytes,
+ * data length (int), data bytes. The index is rebuilt from the record
+ * headers when the store is opened.
+ */
+public class PictureStore {
+
+    /**
+     * Default segment size at which a new segment is started
+     */
+    public static final int DEFAULT_SEGMENT_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Share of dead bytes at which a sealed segment is compacted
+     */
+    public static final float COMPACT_DEAD_RATIO = 0.5f;
+
+    /**
+     * Record signature
+     */
+    private static final int RECORD_MAGIC = 0x50494331;
+
+    /**
+     * Record flag of a picture
+     */
+    private static final byte FLAG_LIVE = 1;
+
+    /**
+     * Record flag of a removal
+     */
+    private static final byte FLAG_REMOVED = 2;
+
+    /**
+     * Size of the fixed record header parts: magic, flags, key length, data length
+     */
+    private static final int HEADER_BYTES = 4 + 1 + 2 + 4;
+
+    /**
+     * Prefix of segment files
+     */
+    private static final String SEGMENT_PREFIX = "seg-";
+
+    /**
+     * Suffix of segment files
+     */
+    private static final String SEGMENT_SUFFIX = ".pack";
+
+    /**
+     * Encoding of keys
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Location of a stored picture
+     */
+    private static class Location {
+        /**
+         * Segment number
+         */
+        final int segment;
+
+        /**
+         * Offset of the picture data in the segment
+         */
+        final int offset;
+
+        /**
+         * Length of the picture data
+         */
+        final int length;
+
+        /**
+         * Size of the whole record, counted as dead once replaced
+         */
+        final int recordBytes;
+
+        /**
+         * Creates a location
+         * @param segment Segment number
+         * @param offset Data offset
+         * @param length Data length
+         * @param recordBytes Record size
+         */
+        Location(int segment, int offset, int length, int recordBytes) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recordBytes = recordBytes;
+        }
+    }
+
+    /**
+     * A segment file
+     */
+    private static class Segment {
+        /**
+         * Segment file
+         */
+        final File file;
+
+        /**
+         * Open file, used for appending and mapping
+         */
+        final RandomAccessFile raf;
+
+        /**
+         * Current mapping, replaced when the segment grows past it
+         */
+        MappedByteBuffer map;
+
+        /**
+         * Bytes of records which are replaced or removed
+         */
+        long deadBytes;
+
+        /**
+         * Opens a segment
+         * @param file Segment file
+         * @throws IOException If the file can't be opened
+         */
+        Segment(File file) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+        }
+
+        /**
+         * Size of the segment
+         * @return Bytes in the file
+         * @throws IOException If the size can't be read
+         */
+        long size() throws IOException {
+            return raf.length();
+        }
+
+        /**
+         * Returns a mapping covering at least the given end offset
+         * @param end Offset which has to be mapped
+         * @return Read-only mapping of the segment
+         * @throws IOException If mapping failed
+         */
+        ByteBuffer map(long end) throws IOException {
+            if (map == null || map.capacity() < end)
+                map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return map.duplicate();
+        }
+    }
+
+    /**
+     * Directory with the segments
+     */
+    private final File dir;
+
+    /**
+     * Size at which a new segment is started
+     */
+    private final int segmentBytes;
+
+    /**
+     * Segments by number
+     */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    /**
+     * Index from key to location of the live picture
+     */
+    private final HashMap<String, Location> index = new HashMap<>();
+
+    /**
+     * Number of the segment appended to
+     */
+    private int active;
+
+    /**
+     * Opens the store, rebuilding the index from the segments
+     * @param dir Directory to keep segments in
+     * @param segmentBytes Size at which a new segment is started
+     * @throws IOException If the segments can't be read
+     */
+    public PictureStore(File dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        dir.mkdirs();
+
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                String name = file.getName();
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+                    continue;
+                try {
+                    int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(number, new Segment(file));
+                } catch (NumberFormatException e) {
+                    file.delete();
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Segment> segment: segments.entrySet())
+            scan(segment.getKey(), segment.getValue());
+
+        if (segments.isEmpty())
+            startSegment(1);
+        else
+            active = segments.lastKey();
+    }
+
+    /**
+     * Reads record headers of a segment into the index.
+     * A torn record at the end, left by a crash, is cut off.
+     * @param number Segment number
+     * @param segment Segment to scan
+     * @throws IOException If the segment can't be read
+     */
+    private void scan(int number, Segment segment) throws IOException {
+        long size = segment.size();
+        ByteBuffer buffer = segment.map(size);
+        int position = 0;
+        while (position + HEADER_BYTES <= size) {
+            buffer.position(position);
+            if (buffer.getInt() != RECORD_MAGIC)
+                break;
+            byte flags = buffer.get();
+            int keyLength = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < keyLength + 4)
+                break;
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            int length = buffer.getInt();
+            if (length < 0 || buffer.remaining() < length)
+                break;
+
+            int recordBytes = HEADER_BYTES + keyLength + length;
+            String key = new String(keyBytes, UTF_8);
+            Location old = index.remove(key);
+            if (old != null)
+                segments.get(old.segment).deadBytes += old.recordBytes;
+            if (flags == FLAG_LIVE)
+                index.put(key, new Location(number, buffer.position(), length, recordBytes));
+            else
+                segment.deadBytes += recordBytes;
+
+            position += recordBytes;
+        }
+
+        if (position < size) {
+            segment.raf.setLength(position);
+            segment.map = null;
+        }
+    }
+
+    /**
+     * Starts a new segment to append to
+     * @param number Segment number
+     * @throws IOException If the file can't be created
+     */
+    private void startSegment(int number) throws IOException {
+        File file = new File(dir, String.format("%s%05d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        segments.put(number, new Segment(file));
+        active = number;
+    }
+
+    /**
+     * Appends a record to the active segment.
+     * A record which couldn't be written completely is removed again.
+     * @param key Picture key
+     * @param flags Record flags
+     * @param data Picture data
+     * @param offset Offset of the data in the array
+     * @param length Length of the data
+     * @return Location of the data
+     * @throws IOException If writing failed
+     */
+    private Location append(String key, byte flags, byte[] data, int offset, int length) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length > 0xFFFF)
+            throw new IllegalArgumentException("Key too long");
+
+        Segment segment = segments.get(active);
+        if (segment.size() > 0 && segment.size() + HEADER_BYTES + keyBytes.length + length > segmentBytes) {
+            startSegment(active + 1);
+            segment = segments.get(active);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + keyBytes.length - 4);
+        header.putInt(RECORD_MAGIC);
+        header.put(flags);
+        header.putShort((short) keyBytes.length);
+        header.put(keyBytes);
+
+        long start = segment.size();
+        RandomAccessFile raf = segment.raf;
+        try {
+            raf.seek(start);
+            raf.write(header.array());
+            raf.writeInt(length);
+            raf.write(data, offset, length);
+        } catch (IOException e) {
+            // Cut off the partial record, or every record appended after it
+            // would be lost when the store is scanned on the next launch
+            raf.setLength(start);
+            segment.map = null;
+            throw e;
+        }
+
+        int recordBytes = HEADER_BYTES + keyBytes.length + length;
+        return new Location(active, (int) (start + recordBytes - length), length, recordBytes);
+    }
+
+    /**
+     * Stores a picture, replacing the previous one with the same key
+     * @param key Picture key
+     * @param data Picture bytes
+     * @throws IOException If writing failed
+     */
+    public synchronized void put(String key, byte[] data) throws IOException {
+        put(key, data, 0, data.length);
+    }
+
+    /**
+     * Stores part of an array as a picture, replacing the previous one with the same key
+     * @param key Picture key
+     * @param data Array with picture bytes
+     * @param offset Offset of the picture in the array
+     * @param length Length of the picture
+     * @throws IOException If writing failed
+     */
+    public synchronized void put(String key, byte[] data, int offset, int length) throws IOException {
+        Location location = append(key, FLAG_LIVE, data, offset, length);
+        Location old = index.put(key, location);
+        if (old != null)
+            markDead(old);
+    }
+
+    /**
+     * Removes a picture
+     * @param key Picture key
+     * @throws IOException If writing failed
+     */
+    public synchronized void remove(String key) throws IOException {
+        Location old = index.remove(key);
+        if (old == null)
+            return;
+        Location tombstone = append(key, FLAG_REMOVED, new byte[0], 0, 0);
+        segments.get(tombstone.segment).deadBytes += tombstone.recordBytes;
+        markDead(old);
+    }
+
+    /**
+     * Checks whether a picture is stored
+     * @param key Picture key
+     * @return True if stored
+     */
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Size of a stored picture
+     * @param key Picture key
+     * @return Length in bytes, or -1 if not stored
+     */
+    public synchronized int length(String key) {
+        Location location = index.get(key);
+        return location == null ? -1 : location.length;
+    }
+
+    /**
+     * Returns a read-only view of a stored picture in its mapped segment
+     * @param key Picture key
+     * @return Buffer positioned at the picture, or NULL if not stored
+     * @throws IOException If the segment can't be mapped
+     */
+    public synchronized ByteBuffer map(String key) throws IOException {
+        Location location = index.get(key);
+        if (location == null)
+            return null;
+        ByteBuffer buffer = segments.get(location.segment).map(location.offset + location.length);
+        buffer.position(location.offset);
+        buffer.limit(location.offset + location.length);
+        return buffer.slice();
+    }
+
+    /**
+     * Copies a stored picture out of its segment
+     * @param key Picture key
+     * @return Picture bytes, or NULL if not stored
+     * @throws IOException If the segment can't be mapped
+     */
+    public byte[] read(String key) throws IOException {
+        ByteBuffer buffer = map(key);
+        if (buffer == null)
+            return null;
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * Lists keys of all stored pictures
+     * @return Keys
+     */
+    public synchronized ArrayList<String> keys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * Total size of all segments
+     * @return Bytes on disk
+     * @throws IOException If sizes can't be read
+     */
+    public synchronized long diskBytes() throws IOException {
+        long total = 0;
+        for (Segment segment: segments.values())
+            total += segment.size();
+        return total;
+    }
+
+    /**
+     * Counts a replaced record as dead and compacts its segment if it's mostly dead
+     * @param old Location of the replaced record
+     * @throws IOException If compaction failed
+     */
+    private void markDead(Location old) throws IOException {
+        Segment segment = segments.get(old.segment);
+        if (segment == null)
+            return;
+        segment.deadBytes += old.recordBytes;
+        if (old.segment != active && segment.deadBytes >= segment.size() * COMPACT_DEAD_RATIO)
+            compact(old.segment);
+    }
+
+    /**
+     * Copies the live pictures of a segment into the active one and deletes the segment.
+     * Removal records are carried over too while older segments may still hold
+     * the removed pictures, so they don't come back when the index is rebuilt.
+     * @param number Segment number
+     * @throws IOException If copying failed
+     */
+    private void compact(int number) throws IOException {
+        Segment segment = segments.get(number);
+        long size = segment.size();
+        ByteBuffer buffer = segment.map(size);
+        boolean olderSegments = segments.firstKey() < number;
+
+        int position = 0;
+        while (position + HEADER_BYTES <= size) {
+            buffer.position(position);
+            if (buffer.getInt() != RECORD_MAGIC)
+                break;
+            byte flags = buffer.get();
+            byte[] keyBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(keyBytes);
+            int length = buffer.getInt();
+            int offset = buffer.position();
+            position = offset + length;
+
+            String key = new String(keyBytes, UTF_8);
+            Location location = index.get(key);
+            if (flags == FLAG_LIVE && location != null && location.segment == number && location.offset == offset) {
+                byte[] data = new byte[length];
+                buffer.get(data);
+                index.put(key, append(key, FLAG_LIVE, data, 0, length));
+            } else if (flags == FLAG_REMOVED && location == null && olderSegments) {
+                Location tombstone = append(key, FLAG_REMOVED, new byte[0], 0, 0);
+                segments.get(tombstone.segment).deadBytes += tombstone.recordBytes;
+            }
+        }
+
+        segments.remove(number);
+        segment.raf.close();
+        segment.file.delete();
+    }
+
+    /**
+     * Closes all segment files
+     * @throws IOException If closing failed
+     */
+    public synchronized void close() throws IOException {
+        for (Segment segment: segments.values())
+            segment.raf.close();
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * @file   PreviewsCreatedInterface.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-16
+ * @brief  Interface to handle event when picture previews are computed.
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.util.Map;
+
+/**
+ * Interface used by PictureDownloader to hand out previews of downloaded pictures
+ */
+public interface PreviewsCreatedInterface {
+    /**
+     * Called from a background thread when previews are computed
+     * @param previews Encoded previews by picture URL
+     */
+    void onPreviewsCreated(Map<String, byte[]> previews);
+}
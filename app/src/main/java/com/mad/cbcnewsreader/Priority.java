@@ -0,0 +1,33 @@
+/**
+ * @file   Priority.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-05
+ * @brief  Priority levels of background work
+ */
+
+package com.mad.cbcnewsreader;
+
+/**
+ * Priority of background work, most urgent first
+ */
+public enum Priority {
+    /**
+     * Work the user is waiting for, such as a refresh or the picture on the article screen
+     */
+    IMMEDIATE,
+
+    /**
+     * Work for what's currently visible, such as pictures of visible list rows
+     */
+    VISIBLE,
+
+    /**
+     * Work for what's likely to be shown soon
+     */
+    PREFETCH,
+
+    /**
+     * Work nobody is waiting for
+     */
+    BACKGROUND
+}
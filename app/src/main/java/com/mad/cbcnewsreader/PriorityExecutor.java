@@ -0,0 +1,176 @@
+/**
+ * @file   PriorityExecutor.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-05
+ * @brief  Thread pool running queued work by priority
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size thread pool whose queue is ordered by Priority,
+ * and in submission order within the same priority.
+ */
+public class PriorityExecutor extends ThreadPoolExecutor {
+
+    /**
+     * Queued work with its priority
+     */
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        /**
+         * Work to run
+         */
+        final Runnable runnable;
+
+        /**
+         * Priority of the work
+         */
+        final Priority priority;
+
+        /**
+         * Submission order, keeps FIFO order within a priority
+         */
+        final long sequence;
+
+        /**
+         * Creates the task
+         * @param runnable Work to run
+         * @param priority Priority of the work
+         * @param sequence Submission order
+         */
+        PrioritizedTask(Runnable runnable, Priority priority, long sequence) {
+            this.runnable = runnable;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Runs the work
+         */
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        /**
+         * Orders by priority, then by submission
+         * @param o Other task
+         * @return Comparable result
+         */
+        @Override
+        public int compareTo(PrioritizedTask o) {
+            int result = priority.compareTo(o.priority);
+            if (result != 0)
+                return result;
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Submission counter
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates the pool
+     * @param name Name prefix of the pool threads
+     * @param threads Number of threads
+     */
+    public PriorityExecutor(final String name, int threads) {
+        super(threads, threads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+        allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues work with background priority
+     * @param command Work to run
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, Priority.BACKGROUND);
+    }
+
+    /**
+     * Queues work with the given priority
+     * @param command Work to run
+     * @param priority Priority of the work
+     */
+    public void execute(Runnable command, Priority priority) {
+        if (command instanceof PrioritizedTask) {
+            super.execute(command);
+            return;
+        }
+        super.execute(new PrioritizedTask(command, priority, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Changes the number of threads. Running work is not interrupted,
+     * extra threads exit once their work is done.
+     * @param threads New thread count
+     */
+    public void setThreads(int threads) {
+        if (threads > getMaximumPoolSize()) {
+            setMaximumPoolSize(threads);
+            setCorePoolSize(threads);
+        } else {
+            setCorePoolSize(threads);
+            setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Raises the priority of queued work. Work which already started, or is
+     * queued with the same or a higher priority, is left alone.
+     * @param command Work as passed to execute()
+     * @param priority New priority
+     * @return True if the work was requeued with the new priority
+     */
+    public boolean promote(Runnable command, Priority priority) {
+        for (Runnable queued: getQueue()) {
+            PrioritizedTask task = (PrioritizedTask) queued;
+            if (task.runnable != command)
+                continue;
+            // A worker may have taken it meanwhile
+            if (task.priority.compareTo(priority) <= 0 || !getQueue().remove(task))
+                return false;
+            // Keeps its submission order among work of the new priority
+            super.execute(new PrioritizedTask(command, priority, task.sequence));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns an Executor which queues work on this pool with a fixed priority,
+     * to be used with AsyncTask.executeOnExecutor
+     * @param priority Priority of the work
+     * @return Executor
+     */
+    public Executor withPriority(final Priority priority) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                PriorityExecutor.this.execute(command, priority);
+            }
+        };
+    }
+}
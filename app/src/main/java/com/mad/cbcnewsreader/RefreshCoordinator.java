@@ -0,0 +1,198 @@
+/**
+ * @file   RefreshCoordinator.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-17
+ * @brief  Single refresh per feed, shared by every screen asking for it
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Runs at most one refresh per feed at a time. A screen asking for a refresh
+ * while one is running is attached to it and gets the same result, instead
+ * of starting a second download and ingest racing the first on the database.
+ * A feed refreshed successfully less than the minimum interval ago isn't
+ * refreshed again. Listeners are only weakly referenced, so a destroyed
+ * screen doesn't cancel a refresh shared with others.
+ * Must only be used on the UI thread.
+ */
+public class RefreshCoordinator {
+
+    /**
+     * Minimum time between two successful refreshes of a feed
+     */
+    public static final long MIN_REFRESH_INTERVAL_MS = 30 * 1000;
+
+    /**
+     * What a refresh request did
+     */
+    public enum Outcome {
+        /**
+         * A new refresh was started; the listener is called once it's done
+         */
+        STARTED,
+
+        /**
+         * A refresh was already running; the listener is called once it's done
+         */
+        JOINED,
+
+        /**
+         * The feed was refreshed too recently; the listener won't be called
+         */
+        THROTTLED
+    }
+
+    /**
+     * Starts the actual refresh work of a feed
+     */
+    public interface Starter {
+        /**
+         * Starts refreshing a feed in the background
+         * @param feedUrl URL of the feed
+         * @param done Called on the UI thread once the refresh is finished
+         */
+        void start(String feedUrl, NewsUpdatedInterface done);
+    }
+
+    /**
+     * A refresh in progress, collecting the screens waiting for it
+     */
+    private class Flight implements NewsUpdatedInterface {
+        /**
+         * URL of the refreshed feed
+         */
+        final String feedUrl;
+
+        /**
+         * Screens waiting for the result
+         */
+        final ListenerRegistry<NewsUpdatedInterface> listeners = new ListenerRegistry<>();
+
+        /**
+         * Creates a refresh
+         * @param feedUrl URL of the refreshed feed
+         */
+        Flight(String feedUrl) {
+            this.feedUrl = feedUrl;
+        }
+
+        /**
+         * Called once the refresh is finished, passes the result to every waiting screen
+         * @param news List of parsed news
+         * @param result Counts of articles actually written to the database
+         */
+        @Override
+        public void onNewsUpdated(ArrayList<NewsEntry> news, IngestResult result) {
+            finished(this, news);
+            for (NewsUpdatedInterface listener: listeners.getListeners())
+                listener.onNewsUpdated(news, result);
+        }
+    }
+
+    /**
+     * Starts the refresh work
+     */
+    private final Starter starter;
+
+    /**
+     * Minimum time between two successful refreshes of a feed, in nanoseconds
+     */
+    private final long minIntervalNanos;
+
+    /**
+     * Refreshes in progress, by feed URL.
+     * Also keeps them reachable, NewsUpdater only holds its callback weakly.
+     */
+    private final HashMap<String, Flight> flights = new HashMap<>();
+
+    /**
+     * System.nanoTime() of the last successful refresh, by feed URL
+     */
+    private final HashMap<String, Long> lastRefreshed = new HashMap<>();
+
+    /**
+     * Creates a coordinator
+     * @param starter Starts the refresh work
+     * @param minIntervalMs Minimum time between two successful refreshes of a feed
+     */
+    public RefreshCoordinator(Starter starter, long minIntervalMs) {
+        this.starter = starter;
+        this.minIntervalNanos = minIntervalMs * 1000000;
+    }
+
+    /**
+     * Creates a coordinator refreshing feeds with NewsUpdater at immediate priority
+     * @param downloader Picture downloader
+     * @param db Database to store news in
+     * @return Coordinator with the default minimum interval
+     */
+    public static RefreshCoordinator forDatabase(final PictureDownloader downloader, final NewsEntryDB db) {
+        return new RefreshCoordinator(new Starter() {
+            @Override
+            public void start(String feedUrl, NewsUpdatedInterface done) {
+                new NewsUpdater(done, downloader, db, feedUrl)
+                        .executeOnExecutor(TaskExecutors.network().withPriority(Priority.IMMEDIATE));
+            }
+        }, MIN_REFRESH_INTERVAL_MS);
+    }
+
+    /**
+     * Refreshes a feed, unless it is already being refreshed or was refreshed too recently
+     * @param feedUrl URL of the feed
+     * @param owner Owner of the listener, usually the calling activity
+     * @param listener Called once the refresh is finished, unless throttled
+     * @return What was done
+     */
+    public Outcome refresh(String feedUrl, Object owner, NewsUpdatedInterface listener) {
+        Flight flight = flights.get(feedUrl);
+        if (flight != null) {
+            flight.listeners.add(owner, listener);
+            return Outcome.JOINED;
+        }
+
+        Long last = lastRefreshed.get(feedUrl);
+        if (last != null && System.nanoTime() - last < minIntervalNanos)
+            return Outcome.THROTTLED;
+
+        flight = new Flight(feedUrl);
+        flight.listeners.add(owner, listener);
+        flights.put(feedUrl, flight);
+        starter.start(feedUrl, flight);
+        return Outcome.STARTED;
+    }
+
+    /**
+     * Checks whether a feed is being refreshed
+     * @param feedUrl URL of the feed
+     * @return True if a refresh is in progress
+     */
+    public boolean isRefreshing(String feedUrl) {
+        return flights.containsKey(feedUrl);
+    }
+
+    /**
+     * Detaches a screen from all refreshes in progress, without cancelling them
+     * @param owner Screen going away
+     */
+    public void removeOwner(Object owner) {
+        for (Flight flight: flights.values())
+            flight.listeners.removeOwner(owner);
+    }
+
+    /**
+     * Ends a refresh. A failed refresh delivers no news and isn't throttled,
+     * so the user can retry straight away.
+     * @param flight Finished refresh
+     * @param news List of parsed news
+     */
+    private void finished(Flight flight, ArrayList<NewsEntry> news) {
+        if (flights.get(flight.feedUrl) == flight)
+            flights.remove(flight.feedUrl);
+        if (news != null && !news.isEmpty())
+            lastRefreshed.put(flight.feedUrl, System.nanoTime());
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * @file   StringPool.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-17
+ * @brief  Deduplicates repeated strings
+ */
+
+package com.mad.cbcnewsreader;
+
+import java.util.HashMap;
+
+/**
+ * Maps equal strings to a single instance, so thousands of articles
+ * sharing a few categories or authors don't each keep a copy.
+ * Unlike String.intern() the pool is freed with its owner.
+ * Not thread-safe, meant to live for one load or parse.
+ */
+public class StringPool {
+
+    /**
+     * Canonical instance of each string seen
+     */
+    private final HashMap<String, String> strings = new HashMap<>();
+
+    /**
+     * Returns the pooled instance of a string, adding it if new
+     * @param value String to look up, may be NULL
+     * @return Equal pooled string, or NULL
+     */
+    public String get(String value) {
+        if (value == null)
+            return null;
+        String pooled = strings.get(value);
+        if (pooled == null) {
+            strings.put(value, value);
+            pooled = value;
+        }
+        return pooled;
+    }
+
+    /**
+     * Number of distinct strings in the pool
+     * @return Pool size
+     */
+    public int size() {
+        return strings.size();
+    }
+}
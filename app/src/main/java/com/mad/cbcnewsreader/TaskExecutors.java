@@ -0,0 +1,63 @@
+/**
+ * @file   TaskExecutors.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-05
+ * @brief  Shared thread pools for background work
+ */
+
+package com.mad.cbcnewsreader;
+
+/**
+ * Dedicated thread pools for network, decode and database work.
+ * Keeping them apart means a long picture batch can't hold up a feed
+ * refresh or a database read, as it does on the AsyncTask serial executor.
+ */
+public final class TaskExecutors {
+
+    /**
+     * Pool for feed and picture downloads
+     */
+    private static final PriorityExecutor network = new PriorityExecutor("network", 3);
+
+    /**
+     * Pool for picture decoding and text measuring
+     */
+    private static final PriorityExecutor decode = new PriorityExecutor("decode",
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * Pool for database work, single-threaded so writes don't contend
+     */
+    private static final PriorityExecutor database = new PriorityExecutor("database", 1);
+
+    /**
+     * Not instantiable
+     */
+    private TaskExecutors() {
+
+    }
+
+    /**
+     * Network pool getter
+     * @return Pool for downloads
+     */
+    public static PriorityExecutor network() {
+        return network;
+    }
+
+    /**
+     * Decode pool getter
+     * @return Pool for picture decoding
+     */
+    public static PriorityExecutor decode() {
+        return decode;
+    }
+
+    /**
+     * Database pool getter
+     * @return Pool for database work
+     */
+    public static PriorityExecutor database() {
+        return database;
+    }
+}
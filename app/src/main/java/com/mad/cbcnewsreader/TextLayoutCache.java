@@ -0,0 +1,148 @@
+/**
+ * @file   TextLayoutCache.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-18
+ * @brief  Text measured in background for list rows
+ */
+
+package com.mad.cbcnewsreader;
+
+import android.os.AsyncTask;
+import android.support.v4.text.PrecomputedTextCompat;
+import android.support.v4.widget.TextViewCompat;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Cache of precomputed text for one kind of TextView, such as unread titles.
+ * Texts are measured on the decode pool before their rows are bound, so
+ * binding a row only attaches the measured text instead of measuring glyphs
+ * on the UI thread. The text metrics are taken from the first bound view;
+ * if they change, e.g. after a font size change, the cache starts over.
+ * Must be used from the UI thread.
+ */
+public class TextLayoutCache {
+
+    /**
+     * Measured texts by their content
+     */
+    private final LruCache<String, PrecomputedTextCompat> texts;
+
+    /**
+     * Texts being measured
+     */
+    private final HashSet<String> pending = new HashSet<>();
+
+    /**
+     * Text metrics of the views, NULL until the first view is bound
+     */
+    private PrecomputedTextCompat.Params params;
+
+    /**
+     * Creates a cache
+     * @param capacity Number of measured texts kept
+     */
+    public TextLayoutCache(int capacity) {
+        texts = new LruCache<>(capacity);
+    }
+
+    /**
+     * Shows a text, measured in advance if it's in the cache
+     * @param view View to show the text in, styled as it will be drawn
+     * @param text Text to show
+     */
+    public void setText(TextView view, String text) {
+        PrecomputedTextCompat.Params viewParams = TextViewCompat.getTextMetricsParams(view);
+        if (!viewParams.equals(params)) {
+            params = viewParams;
+            texts.evictAll();
+            pending.clear();
+        }
+
+        PrecomputedTextCompat measured = text == null ? null : texts.get(text);
+        if (measured == null) {
+            view.setText(text);
+            return;
+        }
+        try {
+            TextViewCompat.setPrecomputedText(view, measured);
+        } catch (IllegalArgumentException e) {
+            // Measured for other metrics after all
+            view.setText(text);
+        }
+    }
+
+    /**
+     * Measures texts in background, unless they're cached or being measured.
+     * Does nothing until a view was bound, as the metrics aren't known before.
+     * @param candidates Texts about to be shown
+     */
+    public void prefetch(List<String> candidates) {
+        if (params == null)
+            return;
+        ArrayList<String> missing = new ArrayList<>();
+        for (String text: candidates) {
+            if (text != null && texts.get(text) == null && pending.add(text))
+                missing.add(text);
+        }
+        if (!missing.isEmpty())
+            new MeasureTask(params, missing)
+                    .executeOnExecutor(TaskExecutors.decode().withPriority(Priority.PREFETCH));
+    }
+
+    /**
+     * Measures a batch of texts
+     */
+    private class MeasureTask extends AsyncTask<Void, Void, List<PrecomputedTextCompat>> {
+        /**
+         * Metrics to measure with
+         */
+        private final PrecomputedTextCompat.Params params;
+
+        /**
+         * Texts to measure
+         */
+        private final List<String> batch;
+
+        /**
+         * Creates the task
+         * @param params Metrics to measure with
+         * @param batch Texts to measure
+         */
+        MeasureTask(PrecomputedTextCompat.Params params, List<String> batch) {
+            this.params = params;
+            this.batch = batch;
+        }
+
+        /**
+         * Measures the texts in background
+         * @param voids Unused
+         * @return Measured texts in batch order
+         */
+        @Override
+        protected List<PrecomputedTextCompat> doInBackground(Void... voids) {
+            ArrayList<PrecomputedTextCompat> measured = new ArrayList<>(batch.size());
+            for (String text: batch)
+                measured.add(PrecomputedTextCompat.create(text, params));
+            return measured;
+        }
+
+        /**
+         * Adds the measured texts to the cache, unless the metrics changed meanwhile
+         * @param measured Measured texts in batch order
+         */
+        @Override
+        protected void onPostExecute(List<PrecomputedTextCompat> measured) {
+            if (params != TextLayoutCache.this.params)
+                return;
+            for (int i = 0; i < batch.size(); i++) {
+                pending.remove(batch.get(i));
+                texts.put(batch.get(i), measured.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * @file   Thumbnailer.java
+ * @author Andrey Dushkevych, Ilia Zhuravlev
+ * @date   2019-04-08
+ * @brief  Makes display-sized thumbnails of downloaded pictures
+ */
+
+package com.mad.cbcnewsreader;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.OutputStream;
+
+/**
+ * Shrinks pictures to the size they are shown at in the news list
+ * and stores them as WebP, so list rows decode a few kilobytes
+ * instead of the original CBC picture.
+ */
+public class Thumbnailer {
+
+    /**
+     * Maximum thumbnail width in pixels
+     */
+    private final int width;
+
+    /**
+     * Maximum thumbnail height in pixels
+     */
+    private final int height;
+
+    /**
+     * Creates the thumbnailer
+     * @param width Maximum thumbnail width in pixels
+     * @param height Maximum thumbnail height in pixels
+     */
+    public Thumbnailer(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Decodes a picture at thumbnail size and writes the compressed thumbnail to a stream
+     * @param source Array with the encoded original picture
+     * @param length Length of the picture in the array
+     * @param target Stream to write the thumbnail to
+     * @param quality WebP quality of the thumbnail, from 0 to 100
+     * @return Thumbnail bitmap, or NULL if the picture couldn't be decoded
+     */
+    public Bitmap create(byte[] source, int length, OutputStream target, int quality) {
+        Bitmap thumb = decode(source, length);
+        if (thumb == null)
+            return null;
+        thumb.compress(Bitmap.CompressFormat.WEBP, quality, target);
+        return thumb;
+    }
+
+    /**
+     * Decodes a picture scaled down to fit the thumbnail size
+     * @param source Array with the encoded picture
+     * @param length Length of the picture in the array
+     * @return Scaled bitmap or NULL
+     */
+    private Bitmap decode(byte[] source, int length) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(source, 0, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+
+        // Subsample while decoding so the full picture is never in memory
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight);
+        options.inJustDecodeBounds = false;
+        Bitmap bmp = BitmapFactory.decodeByteArray(source, 0, length, options);
+        if (bmp == null)
+            return null;
+
+        float scale = Math.min((float) width / bmp.getWidth(), (float) height / bmp.getHeight());
+        if (scale >= 1)
+            return bmp;
+
+        Bitmap scaled = Bitmap.createScaledBitmap(bmp,
+                Math.max(1, Math.round(bmp.getWidth() * scale)),
+                Math.max(1, Math.round(bmp.getHeight() * scale)), true);
+        if (scaled != bmp)
+            bmp.recycle();
+        return scaled;
+    }
+
+    /**
+     * Largest power of two subsampling that keeps the picture at least thumbnail-sized
+     * @param sourceWidth Picture width
+     * @param sourceHeight Picture height
+     * @return Sample size for BitmapFactory
+     */
+    private int sampleSize(int sourceWidth, int sourceHeight) {
+        int sample = 1;
+        while (sourceWidth / (sample * 2) >= width && sourceHeight / (sample * 2) >= height)
+            sample *= 2;
+        return sample;
+    }
+}
@@ -0,0 +1,132 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Heap cost of the in-memory article list at growing archive sizes:
+ * full articles as read before, list summaries with shared categories,
+ * and column storage. Skipped unless sizes are given, e.g.
+ * ./gradlew testDebugUnitTest --tests '*ArticleModelBenchmark' -Pbenchmark=10000,100000
+ */
+public class ArticleModelBenchmark {
+
+    /**
+     * A model being measured
+     */
+    private interface Model {
+        List<NewsEntry> load(List<NewsEntry> rows);
+    }
+
+    /**
+     * Every field of every row read into its own String, like cursor.getString() does
+     */
+    private static final Model FULL = new Model() {
+        @Override
+        public List<NewsEntry> load(List<NewsEntry> rows) {
+            ArrayList<NewsEntry> list = new ArrayList<>(rows.size());
+            for (NewsEntry row: rows) {
+                NewsEntry entry = new NewsEntry(copy(row.getTitle()), copy(row.getLink()), copy(row.getGuid()),
+                        copy(row.getPubDate()), copy(row.getAuthor()), copy(row.getCategory()),
+                        copy(row.getDescription()));
+                entry.setPictureUrl(copy(row.getPictureUrl()));
+                entry.getPublishedTime();
+                list.add(entry);
+            }
+            return list;
+        }
+    };
+
+    /**
+     * Visible fields only, categories shared, as NewsEntryDB reads small lists
+     */
+    private static final Model SUMMARIES = new Model() {
+        @Override
+        public List<NewsEntry> load(List<NewsEntry> rows) {
+            StringPool categories = new StringPool();
+            ArrayList<NewsEntry> list = new ArrayList<>(rows.size());
+            for (NewsEntry row: rows) {
+                NewsEntry entry = new NewsEntry();
+                entry.setTitle(copy(row.getTitle()));
+                entry.setLink(copy(row.getLink()));
+                entry.setGuid(copy(row.getGuid()));
+                entry.setCategory(categories.get(copy(row.getCategory())));
+                entry.setPictureUrl(copy(row.getPictureUrl()));
+                entry.setPublishedTime(row.getPublishedTime());
+                list.add(entry);
+            }
+            return list;
+        }
+    };
+
+    /**
+     * Visible fields in columns, as NewsEntryDB reads large lists
+     */
+    private static final Model COLUMNS = new Model() {
+        @Override
+        public List<NewsEntry> load(List<NewsEntry> rows) {
+            NewsColumns list = new NewsColumns(rows.size());
+            for (NewsEntry row: rows)
+                list.add(copy(row.getTitle()), copy(row.getLink()), copy(row.getGuid()), copy(row.getCategory()),
+                        copy(row.getPictureUrl()), row.getPublishedTime(), false, null);
+            list.trimToSize();
+            return list;
+        }
+    };
+
+    private static String copy(String value) {
+        return value == null ? null : new String(value.toCharArray());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Several collections, so finalizers and soft references settle
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    @Test
+    public void heapPerArticle() {
+        Assume.assumeNotNull(System.getProperty("benchmark.sizes"));
+        ArrayList<String> report = new ArrayList<>();
+        String[] names = { "full", "summaries", "columns" };
+        Model[] models = { FULL, SUMMARIES, COLUMNS };
+
+        // Date parsing and charset tables are loaded once, keep them out of the numbers
+        ArrayList<NewsEntry> warmUp = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            warmUp.add(SyntheticFeedServer.article(i, "http://127.0.0.1:8080"));
+        for (Model model: models)
+            model.load(warmUp);
+
+        for (String size: System.getProperty("benchmark.sizes").split(",")) {
+            int articles = Integer.parseInt(size.trim());
+            ArrayList<NewsEntry> source = new ArrayList<>(articles);
+            for (int i = 0; i < articles; i++)
+                source.add(SyntheticFeedServer.article(i, "http://127.0.0.1:8080"));
+
+            for (int m = 0; m < models.length; m++) {
+                long before = usedHeap();
+                List<NewsEntry> list = models[m].load(source);
+                long bytes = usedHeap() - before;
+                assertEquals(articles, list.size());
+                report.add(String.format(Locale.US, "%8d  %-10s %10.1f %10d",
+                        articles, names[m], bytes / 1048576.0, bytes / articles));
+            }
+        }
+
+        System.out.println(String.format(Locale.US, "%8s  %-10s %10s %10s", "articles", "model", "heap MB", "B/article"));
+        for (String line: report)
+            System.out.println(line);
+    }
+}
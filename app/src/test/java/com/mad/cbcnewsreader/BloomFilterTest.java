@@ -0,0 +1,75 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for BloomFilter: no false negatives and false positives near the configured rate.
+ */
+public class BloomFilterTest {
+
+    private static String guid(int i) {
+        return "1." + (5000000 + i);
+    }
+
+    private static double measuredRate(BloomFilter filter, int from, int probes) {
+        int hits = 0;
+        for (int i = from; i < from + probes; i++)
+            if (filter.mightContain(guid(i)))
+                hits++;
+        return (double) hits / probes;
+    }
+
+    @Test
+    public void hasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++)
+            filter.add(guid(i));
+        for (int i = 0; i < 10000; i++)
+            assertTrue(filter.mightContain(guid(i)));
+        assertEquals(10000, filter.getCount());
+        assertFalse(filter.isFull());
+    }
+
+    @Test
+    public void falsePositivesFollowConfiguredRate() {
+        double[] rates = { 0.1, 0.01, 0.001 };
+        for (double rate: rates) {
+            BloomFilter filter = new BloomFilter(20000, rate);
+            for (int i = 0; i < 20000; i++)
+                filter.add(guid(i));
+            double measured = measuredRate(filter, 1000000, 200000);
+            assertTrue("rate " + rate + " measured " + measured, measured < rate * 1.5);
+            assertTrue("rate " + rate + " measured " + measured, measured > rate * 0.5);
+        }
+    }
+
+    @Test
+    public void lowerRateCostsMoreMemory() {
+        BloomFilter loose = new BloomFilter(10000, 0.05);
+        BloomFilter tight = new BloomFilter(10000, 0.001);
+        assertTrue(tight.getSizeBytes() > loose.getSizeBytes());
+        assertTrue(tight.getHashCount() > loose.getHashCount());
+        // About 1.2 bytes per GUID at 1%, far less than the GUIDs themselves
+        assertTrue(new BloomFilter(10000, 0.01).getSizeBytes() < 10000 * 2);
+    }
+
+    @Test
+    public void reportsWhenOverfilled() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        for (int i = 0; i <= 100; i++)
+            filter.add(guid(i));
+        assertTrue(filter.isFull());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRateOfOne() {
+        new BloomFilter(100, 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new BloomFilter(0, 0.01);
+    }
+}
@@ -0,0 +1,128 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for BoundedStage backlog and overflow.
+ */
+public class BoundedStageTest {
+
+    private PriorityExecutor upstream;
+
+    private PriorityExecutor downstream;
+
+    @After
+    public void tearDown() {
+        if (upstream != null)
+            upstream.shutdownNow();
+        if (downstream != null)
+            downstream.shutdownNow();
+    }
+
+    /**
+     * Occupies the stage with items which run until the returned latch is released
+     */
+    private static CountDownLatch fill(BoundedStage stage) {
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < stage.getCapacity(); i++) {
+            stage.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, Priority.BACKGROUND);
+        }
+        return release;
+    }
+
+    private static Runnable record(final List<String> order, final String name, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void fullStageHoldsWorkWithoutWaiting() throws InterruptedException {
+        downstream = new PriorityExecutor("downstream", 1);
+        BoundedStage stage = new BoundedStage(downstream, 2);
+        CountDownLatch release = fill(stage);
+        assertEquals(2, stage.getBacklog());
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(3);
+        stage.submit(record(order, "background 1", done), Priority.BACKGROUND);
+        stage.submit(record(order, "background 2", done), Priority.BACKGROUND);
+        stage.submit(record(order, "visible", done), Priority.VISIBLE);
+        assertEquals(2, stage.getBacklog());
+        assertEquals(3, stage.getOverflow());
+        // Only the backlog is queued on the pool
+        assertEquals(1, downstream.getQueue().size());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("visible", "background 1", "background 2"), order);
+        assertEquals(0, stage.getOverflow());
+    }
+
+    @Test
+    public void fullStageLeavesUpstreamPoolFree() throws InterruptedException {
+        // One network thread, as in power save mode
+        upstream = new PriorityExecutor("network", 1);
+        downstream = new PriorityExecutor("decode", 1);
+        final BoundedStage decode = new BoundedStage(downstream, 2);
+        CountDownLatch release = fill(decode);
+
+        final int downloads = 10;
+        final CountDownLatch downloaded = new CountDownLatch(downloads);
+        final CountDownLatch decoded = new CountDownLatch(downloads);
+        for (int i = 0; i < downloads; i++) {
+            upstream.execute(new Runnable() {
+                @Override
+                public void run() {
+                    decode.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            decoded.countDown();
+                        }
+                    }, Priority.BACKGROUND);
+                    downloaded.countDown();
+                }
+            }, Priority.BACKGROUND);
+        }
+        assertTrue(downloaded.await(5, TimeUnit.SECONDS));
+        assertEquals(decode.getCapacity(), decode.getBacklog());
+        assertEquals(downloads, decode.getOverflow());
+
+        // A refresh queued now gets the network thread at once
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        upstream.execute(new Runnable() {
+            @Override
+            public void run() {
+                refreshed.countDown();
+            }
+        }, Priority.IMMEDIATE);
+        assertTrue(refreshed.await(1, TimeUnit.SECONDS));
+        assertEquals(downloads, decoded.getCount());
+
+        release.countDown();
+        assertTrue(decoded.await(5, TimeUnit.SECONDS));
+    }
+}
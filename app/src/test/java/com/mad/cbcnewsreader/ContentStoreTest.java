@@ -0,0 +1,109 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ContentStore: deduplication, links and removal of unreferenced content.
+ */
+public class ContentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    private PictureStore store;
+
+    private ContentStore contents;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder();
+        store = new PictureStore(dir, 64 * 1024);
+        contents = new ContentStore(store);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    private String add(String name, byte[] picture) throws IOException {
+        String contentKey = ContentStore.contentKey(picture);
+        contents.putContent(contentKey, picture);
+        contents.putDerived(contentKey, new byte[] { 1, 2, 3 });
+        contents.link(name, contentKey);
+        return contentKey;
+    }
+
+    @Test
+    public void identicalPicturesAreStoredOnce() throws IOException {
+        byte[] picture = FaultInjectingServer.picture("a.jpg");
+        String first = add("url1", picture);
+        int keys = store.keys().size();
+
+        String contentKey = ContentStore.contentKey(picture.clone());
+        assertEquals(first, contentKey);
+        assertTrue(contents.hasDerived(contentKey));
+        assertFalse(contents.putContent(contentKey, picture.clone()));
+        contents.link("url2", contentKey);
+
+        // Only the link was added
+        assertEquals(keys + 1, store.keys().size());
+        assertEquals(first, contents.resolve("url1"));
+        assertEquals(first, contents.resolve("url2"));
+        assertArrayEquals(picture, contents.readContent(contents.resolve("url2")));
+    }
+
+    @Test
+    public void differentPicturesAreKeptApart() throws IOException {
+        String a = add("url1", FaultInjectingServer.picture("a.jpg"));
+        String b = add("url2", FaultInjectingServer.picture("b.jpg"));
+        assertNotEquals(a, b);
+        assertArrayEquals(FaultInjectingServer.picture("b.jpg"), contents.readContent(b));
+    }
+
+    @Test
+    public void unknownNamesDoNotResolve() throws IOException {
+        assertNull(contents.resolve("missing"));
+        assertFalse(contents.isLinked("missing"));
+        assertFalse(contents.hasDerived(ContentStore.contentKey(new byte[] { 9 })));
+    }
+
+    @Test
+    public void removesOnlyUnreferencedContent() throws IOException {
+        String shared = add("url1", FaultInjectingServer.picture("a.jpg"));
+        contents.link("url2", shared);
+        String replaced = add("url3", FaultInjectingServer.picture("b.jpg"));
+
+        // url3 now serves another picture, url1 is gone
+        String current = add("url3", FaultInjectingServer.picture("c.jpg"));
+        contents.unlink("url1");
+
+        assertEquals(1, contents.removeUnreferenced());
+        assertFalse(contents.hasDerived(replaced));
+        assertNull(contents.readContent(replaced));
+        assertTrue(contents.hasDerived(shared));
+        assertTrue(contents.hasDerived(current));
+        assertEquals(2, contents.names().size());
+    }
+
+    @Test
+    public void linksSurviveReopening() throws IOException {
+        String contentKey = add("url1", FaultInjectingServer.picture("a.jpg"));
+        store.close();
+        store = new PictureStore(dir, 64 * 1024);
+        contents = new ContentStore(store);
+        assertEquals(contentKey, contents.resolve("url1"));
+        assertTrue(contents.hasDerived(contentKey));
+    }
+}
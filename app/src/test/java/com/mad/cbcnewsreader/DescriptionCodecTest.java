@@ -0,0 +1,58 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for DescriptionCodec.
+ */
+public class DescriptionCodecTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String DESCRIPTION = SyntheticFeedServer.article(7, "https://i.cbc.ca").getDescription();
+
+    @Test
+    public void roundTrips() {
+        byte[] compressed = DescriptionCodec.compress(DESCRIPTION, DescriptionCodec.DEFAULT_LEVEL);
+        assertNotNull(compressed);
+        assertEquals(DESCRIPTION, DescriptionCodec.decompress(compressed));
+    }
+
+    @Test
+    public void roundTripsNonAscii() {
+        String text = "<p>Québec : l'hiver — déjà fini ? ❄ " + DESCRIPTION + "</p>";
+        assertEquals(text, DescriptionCodec.decompress(DescriptionCodec.compress(text, 1)));
+    }
+
+    @Test
+    public void shrinksTypicalDescriptions() {
+        int raw = DESCRIPTION.getBytes(UTF_8).length;
+        byte[] compressed = DescriptionCodec.compress(DESCRIPTION, DescriptionCodec.DEFAULT_LEVEL);
+        assertTrue(compressed.length + " of " + raw, compressed.length < raw * 3 / 4);
+    }
+
+    @Test
+    public void keepsTextWhenCompressionDoesNotHelp() {
+        assertNull(DescriptionCodec.compress(DESCRIPTION, Deflater.NO_COMPRESSION));
+        assertNull(DescriptionCodec.compress(null, DescriptionCodec.DEFAULT_LEVEL));
+        assertNull(DescriptionCodec.compress("", DescriptionCodec.DEFAULT_LEVEL));
+        assertNull(DescriptionCodec.compress("<p>Hi</p>", DescriptionCodec.DEFAULT_LEVEL));
+    }
+
+    @Test
+    public void detectsDamagedData() {
+        byte[] compressed = DescriptionCodec.compress(DESCRIPTION, DescriptionCodec.DEFAULT_LEVEL);
+        byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        assertNull(DescriptionCodec.decompress(truncated));
+
+        compressed[compressed.length / 2] ^= 0x55;
+        assertNull(DescriptionCodec.decompress(compressed));
+        assertNull(DescriptionCodec.decompress(DESCRIPTION.getBytes(UTF_8)));
+    }
+}
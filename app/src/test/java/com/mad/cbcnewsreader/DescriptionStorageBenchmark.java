@@ -0,0 +1,94 @@
+package com.mad.cbcnewsreader;
+
+import android.content.Context;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Database size and query time with plain and deflated descriptions.
+ * Skipped unless sizes are given, e.g.
+ * ./gradlew testDebugUnitTest --tests '*DescriptionStorageBenchmark' -Pbenchmark=10000,100000
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DescriptionStorageBenchmark {
+
+    /**
+     * Articles opened per run, as from the detail screen
+     */
+    private static final int OPENED = 500;
+
+    private static final int[] LEVELS = { Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, DescriptionCodec.DEFAULT_LEVEL };
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        Assume.assumeNotNull(System.getProperty("benchmark.sizes"));
+        context = RuntimeEnvironment.application;
+    }
+
+    private long databaseBytes() {
+        File file = context.getDatabasePath(NewsEntryDB.DB_NAME);
+        long total = file.length();
+        for (String suffix: new String[] { "-journal", "-wal", "-shm" })
+            total += new File(file.getPath() + suffix).length();
+        return total;
+    }
+
+    @Test
+    public void plainVersusDeflated() {
+        ArrayList<String> report = new ArrayList<>();
+        for (String size: System.getProperty("benchmark.sizes").split(",")) {
+            int articles = Integer.parseInt(size.trim());
+            ArrayList<NewsEntry> news = new ArrayList<>(articles);
+            for (int i = 0; i < articles; i++)
+                news.add(SyntheticFeedServer.article(i, "https://i.cbc.ca"));
+
+            for (int level: LEVELS) {
+                context.deleteDatabase(NewsEntryDB.DB_NAME);
+                NewsEntryDB db = new NewsEntryDB(context, NewsEntryDB.DEFAULT_GUID_FALSE_POSITIVE_RATE, level, null);
+
+                long start = System.nanoTime();
+                db.ingestNewsEntries(NewsUpdater.FEED_URL, news);
+                long ingestMs = (System.nanoTime() - start) / 1000000;
+
+                start = System.nanoTime();
+                List<NewsEntry> loaded = db.getNewsEntries();
+                long loadMs = (System.nanoTime() - start) / 1000000;
+                assertEquals(articles, loaded.size());
+
+                start = System.nanoTime();
+                int step = Math.max(1, articles / OPENED);
+                int opened = 0;
+                for (int i = 0; i < articles; i += step, opened++) {
+                    NewsEntry entry = db.getByGuid(news.get(i).getGuid());
+                    assertEquals(news.get(i).getDescription(), entry.getDescription());
+                }
+                double openUs = (System.nanoTime() - start) / 1000.0 / opened;
+
+                report.add(String.format(Locale.US, "%8d  %5d %9d %9d %9d %10.1f",
+                        articles, level, databaseBytes() / 1024, ingestMs, loadMs, openUs));
+            }
+        }
+
+        System.out.println(String.format(Locale.US, "%8s  %5s %9s %9s %9s %10s",
+                "articles", "level", "db KB", "ingest ms", "load ms", "open us"));
+        for (String line: report)
+            System.out.println(line);
+    }
+}
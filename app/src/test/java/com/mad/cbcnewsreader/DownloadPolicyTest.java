@@ -0,0 +1,87 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for DownloadPolicy selection with a fake device state.
+ */
+public class DownloadPolicyTest {
+
+    private static class FakeDeviceState implements DeviceState {
+        boolean metered;
+        boolean powerSave;
+        int reads;
+
+        FakeDeviceState(boolean metered, boolean powerSave) {
+            this.metered = metered;
+            this.powerSave = powerSave;
+        }
+
+        @Override
+        public boolean isMetered() {
+            reads++;
+            return metered;
+        }
+
+        @Override
+        public boolean isPowerSaveMode() {
+            return powerSave;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        DownloadPolicies.setDeviceState(new FakeDeviceState(false, false));
+        DownloadPolicies.current();
+        DownloadPolicies.setDeviceState(null);
+    }
+
+    @Test
+    public void picksPolicyByState() {
+        assertSame(DownloadPolicy.UNMETERED, DownloadPolicy.forState(new FakeDeviceState(false, false)));
+        assertSame(DownloadPolicy.METERED, DownloadPolicy.forState(new FakeDeviceState(true, false)));
+        assertSame(DownloadPolicy.POWER_SAVE, DownloadPolicy.forState(new FakeDeviceState(false, true)));
+        assertSame(DownloadPolicy.POWER_SAVE, DownloadPolicy.forState(new FakeDeviceState(true, true)));
+    }
+
+    @Test
+    public void constrainedPoliciesDownloadLess() {
+        DownloadPolicy[] policies = { DownloadPolicy.UNMETERED, DownloadPolicy.METERED, DownloadPolicy.POWER_SAVE };
+        for (int i = 1; i < policies.length; i++) {
+            DownloadPolicy looser = policies[i - 1];
+            DownloadPolicy tighter = policies[i];
+            assertTrue(tighter.getNetworkThreads() <= looser.getNetworkThreads());
+            assertTrue(tighter.getPrefetchAheadRows() <= looser.getPrefetchAheadRows());
+            assertTrue(tighter.getPrefetchMaxAheadRows() <= looser.getPrefetchMaxAheadRows());
+            assertTrue(tighter.getThumbnailQuality() <= looser.getThumbnailQuality());
+            assertTrue(tighter.getArticlePrefetchBytes() <= looser.getArticlePrefetchBytes());
+        }
+        assertTrue(DownloadPolicy.UNMETERED.isBackgroundPictures());
+        assertFalse(DownloadPolicy.METERED.isBackgroundPictures());
+        assertEquals(0, DownloadPolicy.METERED.getArticlePrefetchBytes());
+    }
+
+    @Test
+    public void networkPoolFollowsPolicy() {
+        DownloadPolicies.setDeviceState(new FakeDeviceState(false, true));
+        assertSame(DownloadPolicy.POWER_SAVE, DownloadPolicies.current());
+        assertEquals(1, TaskExecutors.network().getCorePoolSize());
+
+        DownloadPolicies.setDeviceState(new FakeDeviceState(false, false));
+        assertSame(DownloadPolicy.UNMETERED, DownloadPolicies.current());
+        assertEquals(3, TaskExecutors.network().getCorePoolSize());
+        assertEquals(3, TaskExecutors.network().getMaximumPoolSize());
+    }
+
+    @Test
+    public void stateIsNotReadOnEveryCall() {
+        FakeDeviceState state = new FakeDeviceState(true, false);
+        DownloadPolicies.setDeviceState(state);
+        for (int i = 0; i < 100; i++)
+            assertSame(DownloadPolicy.METERED, DownloadPolicies.current());
+        assertEquals(1, state.reads);
+    }
+}
@@ -0,0 +1,273 @@
+package com.mad.cbcnewsreader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Local picture server which misbehaves on request, for testing download failures.
+ * Written on raw sockets, so it can break the HTTP exchange in ways a real
+ * server library won't: a body cut short of its Content-Length, or a
+ * connection dropped before any response.
+ * GET /pic/NAME serves a picture of NAME unless a fault is set for NAME.
+ * Pictures carry an ETag of their version and a Cache-Control max-age;
+ * a request with the current ETag in If-None-Match gets a bodiless 304.
+ */
+public class FaultInjectingServer {
+
+    public enum Fault {
+        /** Status 500 with an error page */
+        HTTP_ERROR,
+        /** Full Content-Length announced, half the body sent, connection closed */
+        TRUNCATE,
+        /** Status 200 with an HTML page instead of a picture */
+        NOT_A_PICTURE,
+        /** Connection closed without a response */
+        DROP,
+        /** Status 200 with largePicture(), no Content-Length, ended by closing the connection */
+        NO_LENGTH
+    }
+
+    private static final int PICTURE_BYTES = 8 * 1024;
+
+    private final ServerSocket socket;
+
+    private final Thread acceptor;
+
+    private final HashMap<String, Fault> faults = new HashMap<>();
+
+    private final HashMap<String, Integer> faultsLeft = new HashMap<>();
+
+    private final HashMap<String, Integer> requests = new HashMap<>();
+
+    private final HashMap<String, Integer> notModified = new HashMap<>();
+
+    private final HashMap<String, Integer> versions = new HashMap<>();
+
+    private int maxAgeSeconds = 3600;
+
+    /**
+     * Starts the server on a free loopback port
+     */
+    public FaultInjectingServer() throws IOException {
+        socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket client = socket.accept();
+                        try {
+                            serve(client);
+                        } catch (IOException e) {
+                            // The client gave up, carry on
+                        } finally {
+                            client.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    // Server stopped
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() throws IOException {
+        socket.close();
+    }
+
+    public String pictureUrl(String name) {
+        return "http://127.0.0.1:" + socket.getLocalPort() + "/pic/" + name;
+    }
+
+    /**
+     * Makes a picture fail on every request
+     */
+    public synchronized void setFault(String name, Fault fault) {
+        setFault(name, fault, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Makes a picture fail on the next few requests, then served normally
+     */
+    public synchronized void setFault(String name, Fault fault, int times) {
+        faults.put(name, fault);
+        faultsLeft.put(name, times);
+    }
+
+    public synchronized int getRequestCount(String name) {
+        Integer count = requests.get(name);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Number of requests answered with 304 Not Modified
+     */
+    public synchronized int getNotModifiedCount(String name) {
+        Integer count = notModified.get(name);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Replaces a picture by another version with a new ETag
+     */
+    public synchronized void setVersion(String name, int version) {
+        versions.put(name, version);
+    }
+
+    public synchronized int getVersion(String name) {
+        Integer version = versions.get(name);
+        return version == null ? 1 : version;
+    }
+
+    /**
+     * Changes the max-age sent with every picture, 0 makes them stale at once
+     */
+    public synchronized void setMaxAge(int seconds) {
+        maxAgeSeconds = seconds;
+    }
+
+    public static String etag(String name, int version) {
+        return "\"" + name + "-v" + version + "\"";
+    }
+
+    /**
+     * Bytes of the first version of the picture served for a name
+     */
+    public static byte[] picture(String name) {
+        return picture(name, 1);
+    }
+
+    /**
+     * Bytes of a version of the picture served for a name
+     */
+    public static byte[] picture(String name, int version) {
+        byte[] data = new byte[PICTURE_BYTES];
+        new Random(version == 1 ? name.hashCode() : (name + "@" + version).hashCode()).nextBytes(data);
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        data[2] = (byte) 0xFF;
+        data[PICTURE_BYTES - 2] = (byte) 0xFF;
+        data[PICTURE_BYTES - 1] = (byte) 0xD9;
+        return data;
+    }
+
+    /**
+     * Picture of several times the usual size, served by NO_LENGTH
+     */
+    public static byte[] largePicture(String name) {
+        byte[] data = new byte[PICTURE_BYTES * 10];
+        for (int offset = 0; offset < data.length; offset += PICTURE_BYTES)
+            System.arraycopy(picture(name), 0, data, offset, PICTURE_BYTES);
+        return data;
+    }
+
+    private synchronized void countNotModified(String name) {
+        Integer count = notModified.get(name);
+        notModified.put(name, count == null ? 1 : count + 1);
+    }
+
+    private synchronized Fault nextFault(String name) {
+        Integer count = requests.get(name);
+        requests.put(name, count == null ? 1 : count + 1);
+        Integer left = faultsLeft.get(name);
+        if (left == null || left <= 0)
+            return null;
+        faultsLeft.put(name, left - 1);
+        return faults.get(name);
+    }
+
+    private void serve(Socket client) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), "ISO-8859-1"));
+        String requestLine = reader.readLine();
+        if (requestLine == null)
+            return;
+        String ifNoneMatch = null;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("If-None-Match"))
+                ifNoneMatch = line.substring(colon + 1).trim();
+        }
+
+        String path = requestLine.split(" ")[1];
+        OutputStream output = client.getOutputStream();
+        if (!path.startsWith("/pic/")) {
+            respond(output, "404 Not Found", "text/plain", "", "Not found".getBytes("UTF-8"), -1);
+            return;
+        }
+
+        String name = path.substring("/pic/".length());
+        Fault fault = nextFault(name);
+        int version = getVersion(name);
+        byte[] picture = picture(name, version);
+        if (fault == null) {
+            String cacheHeaders;
+            synchronized (this) {
+                cacheHeaders = "ETag: " + etag(name, version) + "\r\n"
+                        + "Cache-Control: max-age=" + maxAgeSeconds + "\r\n";
+            }
+            if (etag(name, version).equals(ifNoneMatch)) {
+                countNotModified(name);
+                String head = "HTTP/1.1 304 Not Modified\r\n" + cacheHeaders + "Connection: close\r\n\r\n";
+                output.write(head.getBytes("ISO-8859-1"));
+                output.flush();
+                return;
+            }
+            respond(output, "200 OK", "image/jpeg", cacheHeaders, picture, -1);
+            return;
+        }
+        switch (fault) {
+            case HTTP_ERROR:
+                respond(output, "500 Internal Server Error", "text/html", "",
+                        "<html><body>Oops</body></html>".getBytes("UTF-8"), -1);
+                break;
+            case TRUNCATE:
+                respond(output, "200 OK", "image/jpeg", "", picture, picture.length / 2);
+                break;
+            case NOT_A_PICTURE:
+                respond(output, "200 OK", "text/html", "",
+                        "<html><body>Please log in to the hotspot</body></html>".getBytes("UTF-8"), -1);
+                break;
+            case DROP:
+                try {
+                    // Reset instead of a clean close
+                    client.setSoLinger(true, 0);
+                } catch (SocketException e) {
+                    // Closed normally then
+                }
+                break;
+            case NO_LENGTH:
+                byte[] large = largePicture(name);
+                output.write(("HTTP/1.1 200 OK\r\nContent-Type: image/jpeg\r\nConnection: close\r\n\r\n")
+                        .getBytes("ISO-8859-1"));
+                output.write(large);
+                output.flush();
+                break;
+        }
+    }
+
+    /**
+     * Writes a response announcing the full body, but sending only sentBytes of it if not -1
+     */
+    private static void respond(OutputStream output, String status, String type, String extraHeaders,
+                                byte[] body, int sentBytes) throws IOException {
+        String head = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + type + "\r\n"
+                + extraHeaders
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        output.write(head.getBytes("ISO-8859-1"));
+        output.write(body, 0, sentBytes < 0 ? body.length : sentBytes);
+        output.flush();
+    }
+}
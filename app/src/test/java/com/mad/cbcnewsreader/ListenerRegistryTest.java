@@ -0,0 +1,83 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ListenerRegistry, including that a screen which forgets to unregister is not retained.
+ */
+public class ListenerRegistryTest {
+
+    /**
+     * Stands in for an activity with a large view tree
+     */
+    private static class FakeScreen implements PicturesDownloadedInterface {
+        final byte[] viewTree = new byte[1024 * 1024];
+        int notified;
+
+        @Override
+        public void onPicturesDownloaded() {
+            notified++;
+        }
+    }
+
+    private static boolean isCollected(ArrayList<WeakReference<FakeScreen>> refs) {
+        for (int attempt = 0; attempt < 10; attempt++) {
+            System.gc();
+            boolean all = true;
+            for (WeakReference<FakeScreen> ref: refs)
+                all &= ref.get() == null;
+            if (all)
+                return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void notifiesAllListeners() {
+        ListenerRegistry<PicturesDownloadedInterface> registry = new ListenerRegistry<>();
+        FakeScreen main = new FakeScreen();
+        FakeScreen article = new FakeScreen();
+        registry.add(main, main);
+        registry.add(article, article);
+        registry.add(main, main);
+
+        for (PicturesDownloadedInterface listener: registry.getListeners())
+            listener.onPicturesDownloaded();
+
+        assertEquals(1, main.notified);
+        assertEquals(1, article.notified);
+    }
+
+    @Test
+    public void removeOwnerDropsItsListeners() {
+        ListenerRegistry<PicturesDownloadedInterface> registry = new ListenerRegistry<>();
+        FakeScreen main = new FakeScreen();
+        FakeScreen article = new FakeScreen();
+        registry.add(main, main);
+        registry.add(article, article);
+
+        registry.removeOwner(article);
+
+        assertEquals(1, registry.size());
+        assertSame(main, registry.getListeners().get(0));
+    }
+
+    @Test
+    public void forgottenListenerDoesNotLeak() {
+        ListenerRegistry<PicturesDownloadedInterface> registry = new ListenerRegistry<>();
+        ArrayList<WeakReference<FakeScreen>> refs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            FakeScreen screen = new FakeScreen();
+            registry.add(screen, screen);
+            refs.add(new WeakReference<>(screen));
+        }
+
+        assertTrue(isCollected(refs));
+        assertEquals(0, registry.size());
+    }
+}
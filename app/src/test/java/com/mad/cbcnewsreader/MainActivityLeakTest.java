@@ -0,0 +1,132 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the main screen isn't retained once it's recreated, such as on
+ * rotation, while the list loads and picture downloads it started are still
+ * pending.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MainActivityLeakTest {
+
+    private static final int RECREATIONS = 20;
+
+    /**
+     * Accepts connections but never answers, so downloads stay pending
+     */
+    private ServerSocket stalledServer;
+
+    /**
+     * Holds the database pool, so list loads stay queued
+     */
+    private final CountDownLatch databaseBlocked = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        RuntimeEnvironment.application.deleteDatabase(NewsEntryDB.DB_NAME);
+        stalledServer = new ServerSocket(0, RECREATIONS, InetAddress.getLoopbackAddress());
+        TaskExecutors.database().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    databaseBlocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, Priority.IMMEDIATE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        databaseBlocked.countDown();
+        stalledServer.close();
+    }
+
+    @Test
+    public void recreatedScreensAreCollectedWhileWorkIsPending() {
+        ActivityController<MainActivity> controller = Robolectric.buildActivity(MainActivity.class).setup();
+        List<WeakReference<MainActivity>> destroyed = new ArrayList<>();
+        MainActivity activity;
+        for (int i = 0; i < RECREATIONS; i++) {
+            activity = controller.get();
+            requestPicture(activity, i);
+            destroyed.add(new WeakReference<>(activity));
+            controller.recreate();
+            removeWindow(activity);
+        }
+        activity = null;
+        ShadowLooper.idleMainLooper();
+
+        // Every destroyed screen queued a list load, none of them ran
+        assertTrue(TaskExecutors.database().getQueue().size() >= RECREATIONS);
+        assertTrue(TaskExecutors.network().getActiveCount() > 0);
+        assertTrue(isCollected(destroyed));
+
+        controller.pause().stop().destroy();
+    }
+
+    /**
+     * Detaches the window of a destroyed screen, which the framework does
+     * after onDestroy() but Robolectric leaves to the test
+     * @param activity Destroyed screen
+     */
+    private static void removeWindow(MainActivity activity) {
+        activity.getWindowManager().removeViewImmediate(activity.getWindow().getDecorView());
+    }
+
+    /**
+     * Starts a download on behalf of a screen which won't finish while the test runs
+     * @param activity Screen requesting the picture
+     * @param index Number of the picture
+     */
+    private void requestPicture(MainActivity activity, int index) {
+        String url = "http://127.0.0.1:" + stalledServer.getLocalPort() + "/pictures/" + index + ".jpg";
+        PictureDownloader.getInstance().RequestPicture(activity, url, Priority.VISIBLE);
+    }
+
+    /**
+     * Runs the garbage collector until every referent is collected or a few attempts have failed
+     * @param references References to check
+     * @return True if every referent was collected
+     */
+    private static boolean isCollected(List<? extends WeakReference<?>> references) {
+        for (int attempt = 0; attempt < 10; attempt++) {
+            System.gc();
+            System.runFinalization();
+            boolean collected = true;
+            for (WeakReference<?> reference: references)
+                collected &= reference.get() == null;
+            if (collected)
+                return true;
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+}
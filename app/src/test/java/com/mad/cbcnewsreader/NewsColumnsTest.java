@@ -0,0 +1,97 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for NewsColumns: rows read back as stored, and changes to rows are kept.
+ */
+public class NewsColumnsTest {
+
+    private static byte[] preview(int seed) {
+        byte[] preview = new byte[PicturePreview.BYTES];
+        for (int i = 0; i < preview.length; i++)
+            preview[i] = (byte) (seed + i);
+        return preview;
+    }
+
+    private static NewsColumns build(int rows) {
+        // Starts small, so the arrays have to grow
+        NewsColumns columns = new NewsColumns(1);
+        for (int i = 0; i < rows; i++) {
+            NewsEntry article = SyntheticFeedServer.article(i, "http://127.0.0.1:1");
+            columns.add(article.getTitle(), article.getLink(), article.getGuid(), article.getCategory(),
+                    article.getPictureUrl(), article.getPublishedTime(), i % 3 == 0, i % 2 == 0 ? preview(i) : null);
+        }
+        columns.trimToSize();
+        return columns;
+    }
+
+    @Test
+    public void rowsReadBackAsStored() {
+        NewsColumns columns = build(500);
+        assertEquals(500, columns.size());
+        assertEquals(12, columns.getCategoryCount());
+        for (int i = 0; i < 500; i++) {
+            NewsEntry article = SyntheticFeedServer.article(i, "http://127.0.0.1:1");
+            NewsEntry row = columns.get(i);
+            assertEquals(article.getTitle(), row.getTitle());
+            assertEquals(article.getLink(), row.getLink());
+            assertEquals(article.getGuid(), row.getGuid());
+            assertEquals(article.getCategory(), row.getCategory());
+            assertEquals(article.getPictureUrl(), row.getPictureUrl());
+            assertEquals(article.getPublishedTime(), row.getPublishedTime());
+            assertEquals(i % 3 == 0, row.isRead());
+            if (i % 2 == 0)
+                assertArrayEquals(preview(i), row.getPreview());
+            else
+                assertNull(row.getPreview());
+            // Summaries leave the description in the database
+            assertNull(row.getDescription());
+        }
+    }
+
+    @Test
+    public void keepsNullsAndNonAsciiText() {
+        NewsColumns columns = new NewsColumns(2);
+        columns.add(null, "", "1", null, null, 0, false, new byte[3]);
+        columns.add("Québec : « élection »", "l", "2", "Montréal", "p", 1, true, null);
+
+        NewsEntry first = columns.get(0);
+        assertNull(first.getTitle());
+        assertEquals("", first.getLink());
+        assertNull(first.getCategory());
+        // Malformed previews are dropped
+        assertNull(first.getPreview());
+
+        NewsEntry second = columns.get(1);
+        assertEquals("Québec : « élection »", second.getTitle());
+        assertEquals("Montréal", second.getCategory());
+    }
+
+    @Test
+    public void rowChangesAreWrittenBack() {
+        NewsColumns columns = build(10);
+        columns.get(1).setRead(true);
+        columns.get(0).setRead(false);
+        columns.get(1).setPreview(preview(42));
+        assertTrue(columns.get(1).isRead());
+        assertFalse(columns.get(0).isRead());
+        assertArrayEquals(preview(42), columns.get(1).getPreview());
+    }
+
+    @Test
+    public void keepsNewestFirstOrder() {
+        List<NewsEntry> columns = build(50);
+        for (int i = 1; i < columns.size(); i++)
+            assertTrue(columns.get(i - 1).compareTo(columns.get(i)) < 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsRowsPastTheEnd() {
+        build(3).get(3);
+    }
+}
@@ -0,0 +1,217 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PictureFetcher and FailedUrlCache against a FaultInjectingServer.
+ */
+public class PictureFetcherTest {
+
+    private static final PictureFetcher.Cancellation NEVER = new PictureFetcher.Cancellation() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    private FaultInjectingServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FaultInjectingServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop();
+    }
+
+    private void assertFetchFails(String name) {
+        try {
+            PictureFetcher.fetch(server.pictureUrl(name), NEVER);
+            fail("Fetched a broken picture " + name);
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void fetchesCompletePicture() throws IOException {
+        byte[] picture = PictureFetcher.fetch(server.pictureUrl("ok.jpg"), NEVER);
+        assertArrayEquals(FaultInjectingServer.picture("ok.jpg"), picture);
+    }
+
+    @Test
+    public void fetchesPictureOfUnknownLength() throws IOException {
+        server.setFault("unsized.jpg", FaultInjectingServer.Fault.NO_LENGTH);
+        PictureFetcher.Response response = PictureFetcher.fetch(server.pictureUrl("unsized.jpg"), null, NEVER);
+        byte[] expected = FaultInjectingServer.largePicture("unsized.jpg");
+        assertEquals(expected.length, response.getLength());
+        assertTrue(response.getBody().length >= expected.length);
+        assertEquals(ContentStore.contentKey(expected),
+                ContentStore.contentKey(response.getBody(), response.getLength()));
+    }
+
+    @Test
+    public void fetchesPictureIntoArrayOfAnnouncedLength() throws IOException {
+        PictureFetcher.Response response = PictureFetcher.fetch(server.pictureUrl("ok.jpg"), null, NEVER);
+        assertEquals(FaultInjectingServer.picture("ok.jpg").length, response.getLength());
+        assertArrayEquals(FaultInjectingServer.picture("ok.jpg"),
+                Arrays.copyOf(response.getBody(), response.getLength()));
+    }
+
+    @Test
+    public void rejectsHttpErrors() {
+        server.setFault("error.jpg", FaultInjectingServer.Fault.HTTP_ERROR);
+        assertFetchFails("error.jpg");
+    }
+
+    @Test
+    public void rejectsTruncatedBody() {
+        server.setFault("short.jpg", FaultInjectingServer.Fault.TRUNCATE);
+        assertFetchFails("short.jpg");
+    }
+
+    @Test
+    public void rejectsPagesServedAsPictures() {
+        server.setFault("portal.jpg", FaultInjectingServer.Fault.NOT_A_PICTURE);
+        assertFetchFails("portal.jpg");
+    }
+
+    @Test
+    public void rejectsDroppedConnection() {
+        server.setFault("dropped.jpg", FaultInjectingServer.Fault.DROP);
+        assertFetchFails("dropped.jpg");
+    }
+
+    @Test
+    public void stopsWhenCancelled() throws IOException {
+        PictureFetcher.Cancellation always = new PictureFetcher.Cancellation() {
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+        assertNull(PictureFetcher.fetch(server.pictureUrl("ok.jpg"), always));
+    }
+
+    @Test
+    public void recognisesPictureSignatures() {
+        assertTrue(PictureFetcher.isPicture(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0 }));
+        assertTrue(PictureFetcher.isPicture(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n' }));
+        assertTrue(PictureFetcher.isPicture("GIF89a".getBytes()));
+        assertTrue(PictureFetcher.isPicture("RIFF\0\0\0\0WEBPVP8 ".getBytes()));
+        assertTrue(PictureFetcher.isPicture(new byte[] { 0, 0, 1, 0, 1, 0 }));
+        assertFalse(PictureFetcher.isPicture("<html>".getBytes()));
+        assertFalse(PictureFetcher.isPicture(new byte[0]));
+    }
+
+    @Test
+    public void backoffDoublesUpToTheMaximum() {
+        FailedUrlCache cache = new FailedUrlCache(1000, 5000, 10);
+        long now = 0;
+        assertEquals(1000, cache.recordFailure("a", now));
+        assertEquals(2000, cache.recordFailure("a", now));
+        assertEquals(4000, cache.recordFailure("a", now));
+        assertEquals(5000, cache.recordFailure("a", now));
+        for (int i = 0; i < 100; i++)
+            assertEquals(5000, cache.recordFailure("a", now));
+
+        assertTrue(cache.isBlocked("a", now + 4999 * 1000000L));
+        assertFalse(cache.isBlocked("a", now + 5000 * 1000000L));
+        assertFalse(cache.isBlocked("b", now));
+    }
+
+    @Test
+    public void successForgetsFailures() {
+        FailedUrlCache cache = new FailedUrlCache(1000, 5000, 10);
+        cache.recordFailure("a", 0);
+        cache.recordFailure("a", 0);
+        cache.recordSuccess("a");
+        assertFalse(cache.isBlocked("a", 0));
+        assertEquals(1000, cache.recordFailure("a", 0));
+    }
+
+    @Test
+    public void remembersOnlyRecentFailures() {
+        FailedUrlCache cache = new FailedUrlCache(1000, 5000, 3);
+        for (int i = 0; i < 5; i++)
+            cache.recordFailure("url" + i, 0);
+        assertEquals(3, cache.size());
+        assertFalse(cache.isBlocked("url0", 0));
+        assertTrue(cache.isBlocked("url4", 0));
+    }
+
+    @Test
+    public void failingUrlStopsBeingRequested() throws IOException {
+        FailedUrlCache cache = new FailedUrlCache(60000, 60000, 10);
+        server.setFault("flaky.jpg", FaultInjectingServer.Fault.TRUNCATE, 1);
+        String url = server.pictureUrl("flaky.jpg");
+
+        // A refresh asking for the picture ten times downloads it once
+        for (int i = 0; i < 10; i++) {
+            if (cache.isBlocked(url))
+                continue;
+            try {
+                PictureFetcher.fetch(url, NEVER);
+                cache.recordSuccess(url);
+            } catch (IOException e) {
+                cache.recordFailure(url);
+            }
+        }
+        assertEquals(1, server.getRequestCount("flaky.jpg"));
+
+        assertTrue(cache.isBlocked(url));
+
+        // The server recovered, a retry after the delay gets the picture
+        assertNotNull(PictureFetcher.fetch(url, NEVER));
+        assertEquals(2, server.getRequestCount("flaky.jpg"));
+    }
+
+    @Test
+    public void unchangedPictureIsRevalidatedWithoutBody() throws IOException {
+        server.setMaxAge(600);
+        String url = server.pictureUrl("fresh.jpg");
+        PictureFetcher.Response first = PictureFetcher.fetch(url, null, NEVER);
+        assertArrayEquals(FaultInjectingServer.picture("fresh.jpg"), first.getBody());
+        assertEquals(FaultInjectingServer.etag("fresh.jpg", 1), first.getFreshness().getEtag());
+        long now = System.currentTimeMillis();
+        assertFalse(first.getFreshness().isStale(now));
+        assertTrue(first.getFreshness().isStale(now + 601 * 1000));
+
+        PictureFetcher.Response second = PictureFetcher.fetch(url, first.getFreshness(), NEVER);
+        assertTrue(second.isNotModified());
+        assertNull(second.getBody());
+        assertEquals(FaultInjectingServer.etag("fresh.jpg", 1), second.getFreshness().getEtag());
+        assertEquals(1, server.getNotModifiedCount("fresh.jpg"));
+    }
+
+    @Test
+    public void changedPictureIsDownloadedAgain() throws IOException {
+        String url = server.pictureUrl("changing.jpg");
+        PictureFetcher.Response first = PictureFetcher.fetch(url, null, NEVER);
+
+        server.setVersion("changing.jpg", 2);
+        PictureFetcher.Response second = PictureFetcher.fetch(url, first.getFreshness(), NEVER);
+        assertFalse(second.isNotModified());
+        assertArrayEquals(FaultInjectingServer.picture("changing.jpg", 2), second.getBody());
+        assertEquals(FaultInjectingServer.etag("changing.jpg", 2), second.getFreshness().getEtag());
+        assertEquals(0, server.getNotModifiedCount("changing.jpg"));
+    }
+
+    @Test
+    public void pictureWithoutValidatorsIsDownloadedAgain() throws IOException {
+        String url = server.pictureUrl("legacy.jpg");
+        PictureFreshness legacy = new PictureFreshness(null, null, 0);
+        PictureFetcher.Response response = PictureFetcher.fetch(url, legacy, NEVER);
+        assertFalse(response.isNotModified());
+        assertArrayEquals(FaultInjectingServer.picture("legacy.jpg"), response.getBody());
+    }
+}
@@ -0,0 +1,98 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the freshness rules of PictureFreshness.
+ */
+public class PictureFreshnessTest {
+
+    private static final long NOW = 1555600000000L;
+
+    private static final String DATE = "Thu, 18 Apr 2019 15:06:40 GMT";
+
+    private static final String DAY_BEFORE = "Wed, 17 Apr 2019 15:06:40 GMT";
+
+    private static final String HOUR_AFTER = "Thu, 18 Apr 2019 16:06:40 GMT";
+
+    @Test
+    public void maxAgeWins() {
+        PictureFreshness freshness = PictureFreshness.parse("public, max-age=600", HOUR_AFTER, DATE,
+                "\"a\"", null, NOW);
+        assertEquals(NOW + 600 * 1000, freshness.getExpiresAt());
+        assertFalse(freshness.isStale(NOW + 599 * 1000));
+        assertTrue(freshness.isStale(NOW + 600 * 1000));
+    }
+
+    @Test
+    public void noCacheIsStaleAtOnce() {
+        assertTrue(PictureFreshness.parse("no-cache", null, null, "\"a\"", null, NOW).isStale(NOW));
+        assertTrue(PictureFreshness.parse("max-age=600, no-store", null, null, "\"a\"", null, NOW)
+                .isStale(NOW));
+    }
+
+    @Test
+    public void mustRevalidateKeepsMaxAge() {
+        PictureFreshness freshness = PictureFreshness.parse("max-age=600, must-revalidate", null, null,
+                "\"a\"", null, NOW);
+        assertEquals(NOW + 600 * 1000, freshness.getExpiresAt());
+        assertFalse(freshness.isStale(NOW + 599 * 1000));
+    }
+
+    @Test
+    public void hugeMaxAgeDoesNotOverflow() {
+        PictureFreshness freshness = PictureFreshness.parse("max-age=99999999999999999999", null, null,
+                null, null, NOW);
+        assertFalse(freshness.isStale(NOW + 365L * 24 * 60 * 60 * 1000));
+    }
+
+    @Test
+    public void expiresIsRelativeToServerDate() {
+        // The server clock is a day behind ours, the picture is still fresh for an hour
+        PictureFreshness freshness = PictureFreshness.parse(null, "Wed, 17 Apr 2019 16:06:40 GMT", DAY_BEFORE,
+                null, null, NOW);
+        assertEquals(NOW + 60 * 60 * 1000, freshness.getExpiresAt());
+        assertTrue(PictureFreshness.parse(null, "0", DATE, null, null, NOW).isStale(NOW));
+    }
+
+    @Test
+    public void lastModifiedGivesTenthOfAge() {
+        PictureFreshness freshness = PictureFreshness.parse(null, null, DATE, null, DAY_BEFORE, NOW);
+        assertEquals(NOW + 24 * 60 * 60 * 100, freshness.getExpiresAt());
+        assertTrue(freshness.hasValidators());
+    }
+
+    @Test
+    public void defaultsWithoutHeaders() {
+        PictureFreshness freshness = PictureFreshness.parse(null, null, null, null, null, NOW);
+        assertEquals(NOW + PictureFreshness.DEFAULT_MAX_AGE_MS, freshness.getExpiresAt());
+        assertFalse(freshness.hasValidators());
+    }
+
+    @Test
+    public void encodesAndDecodes() {
+        PictureFreshness freshness = new PictureFreshness("\"abc\"", DATE, NOW);
+        PictureFreshness decoded = PictureFreshness.decode(freshness.encode());
+        assertEquals("\"abc\"", decoded.getEtag());
+        assertEquals(DATE, decoded.getLastModified());
+        assertEquals(NOW, decoded.getExpiresAt());
+
+        decoded = PictureFreshness.decode(new PictureFreshness(null, null, NOW).encode());
+        assertNull(decoded.getEtag());
+        assertNull(decoded.getLastModified());
+
+        assertNull(PictureFreshness.decode(new byte[] { 1, 2 }));
+        assertNull(PictureFreshness.decode(null));
+    }
+
+    @Test
+    public void revalidationKeepsValidatorsNotResent() {
+        PictureFreshness cached = new PictureFreshness("\"abc\"", DAY_BEFORE, NOW);
+        PictureFreshness updated = cached.revalidatedBy(new PictureFreshness(null, null, NOW + 1000));
+        assertEquals("\"abc\"", updated.getEtag());
+        assertEquals(DAY_BEFORE, updated.getLastModified());
+        assertEquals(NOW + 1000, updated.getExpiresAt());
+    }
+}
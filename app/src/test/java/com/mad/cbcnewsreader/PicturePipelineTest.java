@@ -0,0 +1,154 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PicturePipeline with fast fake fetches and a slow fake decoder.
+ */
+public class PicturePipelineTest {
+
+    private static final int PICTURES = 40;
+
+    private static final int DECODE_BACKLOG = 4;
+
+    private PriorityExecutor network;
+
+    private PriorityExecutor decode;
+
+    private PriorityExecutor database;
+
+    private PicturePipeline pipeline;
+
+    /**
+     * Decodes wait for a permit each, so the test decides how slow decoding is
+     */
+    private final Semaphore decoder = new Semaphore(0);
+
+    private final AtomicInteger decodesRunning = new AtomicInteger();
+
+    private final AtomicInteger decoded = new AtomicInteger();
+
+    private final AtomicInteger published = new AtomicInteger();
+
+    /**
+     * Decodes which found the backlog below its cap while work was waiting in the overflow
+     */
+    private final AtomicInteger backlogBelowCap = new AtomicInteger();
+
+    private final CountDownLatch decodeStarted = new CountDownLatch(1);
+
+    private CountDownLatch downloaded;
+
+    private CountDownLatch finished;
+
+    @Before
+    public void setUp() {
+        network = new PriorityExecutor("network", 3);
+        decode = new PriorityExecutor("decode", 1);
+        database = new PriorityExecutor("database", 1);
+        pipeline = new PicturePipeline(network, new BoundedStage(decode, DECODE_BACKLOG),
+                new BoundedStage(database, 16));
+        downloaded = new CountDownLatch(PICTURES);
+        finished = new CountDownLatch(PICTURES);
+    }
+
+    @After
+    public void tearDown() {
+        network.shutdownNow();
+        decode.shutdownNow();
+        database.shutdownNow();
+    }
+
+    /**
+     * Picture with a download taking no time and a decode waiting for the decoder
+     */
+    private class FakePicture extends PicturePipeline.Job {
+
+        FakePicture() {
+            super(Priority.BACKGROUND);
+        }
+
+        @Override
+        protected boolean download() {
+            downloaded.countDown();
+            return true;
+        }
+
+        @Override
+        protected boolean decode() {
+            BoundedStage stage = pipeline.getDecodeStage();
+            // Backlog first: once it's below the cap the overflow is empty for good here
+            if (stage.getBacklog() < stage.getCapacity() && stage.getOverflow() > 0)
+                backlogBelowCap.incrementAndGet();
+            decodesRunning.incrementAndGet();
+            decodeStarted.countDown();
+            try {
+                decoder.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                decodesRunning.decrementAndGet();
+            }
+            decoded.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        protected void publish() {
+            published.incrementAndGet();
+        }
+
+        @Override
+        protected void finish(boolean published) {
+            finished.countDown();
+        }
+    }
+
+    @Test
+    public void downloadsKeepGoingWhileDecodesRun() throws InterruptedException {
+        for (int i = 0; i < PICTURES; i++)
+            pipeline.start(new FakePicture());
+
+        // Every download finishes while the first decode is still running
+        assertTrue(decodeStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(downloaded.await(5, TimeUnit.SECONDS));
+        assertEquals(1, decodesRunning.get());
+        assertEquals(0, decoded.get());
+
+        decoder.release(PICTURES);
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void backlogIsHeldAtItsCap() throws InterruptedException {
+        for (int i = 0; i < PICTURES; i++)
+            pipeline.start(new FakePicture());
+        // Every download handed its picture over
+        network.shutdown();
+        assertTrue(network.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(decodeStarted.await(5, TimeUnit.SECONDS));
+
+        BoundedStage stage = pipeline.getDecodeStage();
+        assertEquals(DECODE_BACKLOG, stage.getBacklog());
+        assertEquals(PICTURES - DECODE_BACKLOG, stage.getOverflow());
+        // The rest of the backlog is queued on the decode pool, not more
+        assertEquals(DECODE_BACKLOG - 1, decode.getQueue().size());
+
+        decoder.release(PICTURES);
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(0, backlogBelowCap.get());
+        assertEquals(PICTURES, decoded.get());
+        assertEquals(PICTURES, published.get());
+        assertEquals(0, stage.getOverflow());
+    }
+}
@@ -0,0 +1,41 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the PicturePreview colour encoding.
+ */
+public class PicturePreviewTest {
+
+    @Test
+    public void encodesGridInFewBytes() {
+        int[] pixels = new int[PicturePreview.WIDTH * PicturePreview.HEIGHT];
+        assertEquals(PicturePreview.BYTES, PicturePreview.encode(pixels).length);
+        assertTrue(PicturePreview.BYTES <= 32);
+    }
+
+    @Test
+    public void keepsBlackAndWhiteExact() {
+        int[] pixels = { 0xFFFFFFFF, 0xFF000000 };
+        assertArrayEquals(pixels, PicturePreview.decode(PicturePreview.encode(pixels)));
+    }
+
+    @Test
+    public void roundTripStaysCloseToOriginal() {
+        int[] pixels = new int[PicturePreview.WIDTH * PicturePreview.HEIGHT];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xFF000000 | (i * 0x151A27 + 0x0A4B8C) & 0xFFFFFF;
+
+        int[] decoded = PicturePreview.decode(PicturePreview.encode(pixels));
+        for (int i = 0; i < pixels.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int expected = (pixels[i] >> shift) & 0xFF;
+                int actual = (decoded[i] >> shift) & 0xFF;
+                assertTrue("pixel " + i, Math.abs(expected - actual) <= 8);
+            }
+            assertEquals(0xFF, decoded[i] >>> 24);
+        }
+    }
+}
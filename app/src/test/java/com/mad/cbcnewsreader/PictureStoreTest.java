@@ -0,0 +1,124 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PictureStore: lookups, reopening, removal, compaction and crash recovery.
+ */
+public class PictureStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] picture(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++)
+            data[i] = (byte) (i * 31 + seed);
+        return data;
+    }
+
+    private static File lastSegment(File dir) {
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        return files[files.length - 1];
+    }
+
+    @Test
+    public void readsBackAfterReopen() throws Exception {
+        File dir = folder.newFolder();
+        PictureStore store = new PictureStore(dir, 1024);
+        for (int i = 0; i < 20; i++)
+            store.put("t/" + i, picture(100 + i, i));
+        store.close();
+
+        store = new PictureStore(dir, 1024);
+        assertEquals(20, store.keys().size());
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(picture(100 + i, i), store.read("t/" + i));
+            ByteBuffer mapped = store.map("t/" + i);
+            assertEquals(100 + i, mapped.remaining());
+            assertEquals((byte) i, mapped.get(0));
+        }
+        assertTrue(dir.listFiles().length > 1);
+        store.close();
+    }
+
+    @Test
+    public void replacesAndRemoves() throws Exception {
+        File dir = folder.newFolder();
+        PictureStore store = new PictureStore(dir, 4096);
+        store.put("a", picture(10, 1));
+        store.put("a", picture(20, 2));
+        store.put("b", picture(30, 3));
+        store.remove("b");
+        assertEquals(20, store.length("a"));
+        assertFalse(store.contains("b"));
+        assertNull(store.read("b"));
+        store.close();
+
+        store = new PictureStore(dir, 4096);
+        assertArrayEquals(picture(20, 2), store.read("a"));
+        assertFalse(store.contains("b"));
+        store.close();
+    }
+
+    @Test
+    public void compactionReclaimsSpaceAndKeepsRemovals() throws Exception {
+        File dir = folder.newFolder();
+        PictureStore store = new PictureStore(dir, 1000);
+        // "gone" and "old" stay in the first segment, "gone" is removed in the second one
+        store.put("gone", picture(100, 0));
+        store.put("old", picture(800, 0));
+        store.put("keep", picture(100, 1));
+        store.remove("gone");
+        for (int i = 0; i < 20; i++)
+            store.put("churn", picture(300, i));
+        store.put("keep", picture(100, 2));
+        long before = store.diskBytes();
+        for (int i = 0; i < 20; i++)
+            store.put("churn", picture(300, i));
+        assertTrue(store.diskBytes() <= before + 1000);
+        store.close();
+
+        store = new PictureStore(dir, 1000);
+        assertFalse(store.contains("gone"));
+        assertArrayEquals(picture(800, 0), store.read("old"));
+        assertArrayEquals(picture(100, 2), store.read("keep"));
+        assertArrayEquals(picture(300, 19), store.read("churn"));
+        store.close();
+    }
+
+    @Test
+    public void truncatesTornRecord() throws Exception {
+        File dir = folder.newFolder();
+        PictureStore store = new PictureStore(dir, 4096);
+        store.put("a", picture(50, 1));
+        store.put("b", picture(50, 2));
+        store.close();
+
+        // Simulate a crash in the middle of writing "b"
+        File segment = lastSegment(dir);
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.setLength(raf.length() - 20);
+        raf.close();
+
+        store = new PictureStore(dir, 4096);
+        assertArrayEquals(picture(50, 1), store.read("a"));
+        assertFalse(store.contains("b"));
+        store.put("c", picture(50, 3));
+        store.close();
+
+        store = new PictureStore(dir, 4096);
+        assertArrayEquals(picture(50, 3), store.read("c"));
+        store.close();
+    }
+}
@@ -0,0 +1,132 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PriorityExecutor ordering.
+ */
+public class PriorityExecutorTest {
+
+    private PriorityExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    /**
+     * Occupies all threads of the pool until the returned latch is released
+     */
+    private static CountDownLatch block(PriorityExecutor executor, int threads) throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static Runnable record(final List<String> order, final String name, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void refreshIsNotDelayedByQueuedImageBatch() throws InterruptedException {
+        executor = new PriorityExecutor("test", 1);
+        CountDownLatch release = block(executor, 1);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(21);
+        for (int i = 0; i < 20; i++)
+            executor.withPriority(Priority.BACKGROUND).execute(record(order, "image" + i, done));
+        executor.withPriority(Priority.IMMEDIATE).execute(record(order, "refresh", done));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("refresh", order.get(0));
+    }
+
+    @Test
+    public void samePriorityRunsInSubmissionOrder() throws InterruptedException {
+        executor = new PriorityExecutor("test", 1);
+        CountDownLatch release = block(executor, 1);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(5);
+        executor.withPriority(Priority.PREFETCH).execute(record(order, "prefetch", done));
+        executor.withPriority(Priority.VISIBLE).execute(record(order, "visible0", done));
+        executor.withPriority(Priority.BACKGROUND).execute(record(order, "background", done));
+        executor.withPriority(Priority.VISIBLE).execute(record(order, "visible1", done));
+        executor.withPriority(Priority.IMMEDIATE).execute(record(order, "detail", done));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("detail", "visible0", "visible1", "prefetch", "background"), order);
+    }
+
+    @Test
+    public void promotedWorkOvertakesLowerPriorities() throws InterruptedException {
+        executor = new PriorityExecutor("test", 1);
+        CountDownLatch release = block(executor, 1);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(4);
+        executor.withPriority(Priority.BACKGROUND).execute(record(order, "batch", done));
+        executor.withPriority(Priority.PREFETCH).execute(record(order, "prefetch", done));
+        Runnable scrolledIn = record(order, "scrolledIn", done);
+        executor.withPriority(Priority.PREFETCH).execute(scrolledIn);
+        executor.withPriority(Priority.VISIBLE).execute(record(order, "visible", done));
+
+        assertTrue(executor.promote(scrolledIn, Priority.VISIBLE));
+        // Never demoted
+        assertFalse(executor.promote(scrolledIn, Priority.BACKGROUND));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("scrolledIn", "visible", "prefetch", "batch"), order);
+        assertFalse(executor.promote(scrolledIn, Priority.IMMEDIATE));
+    }
+
+    @Test
+    public void separatePoolsDoNotBlockEachOther() throws InterruptedException {
+        executor = new PriorityExecutor("images", 1);
+        PriorityExecutor feed = new PriorityExecutor("feed", 1);
+        try {
+            CountDownLatch release = block(executor, 1);
+            CountDownLatch done = new CountDownLatch(1);
+            feed.withPriority(Priority.IMMEDIATE).execute(record(new ArrayList<String>(), "refresh", done));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            release.countDown();
+        } finally {
+            feed.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mad.cbcnewsreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for RefreshCoordinator: one refresh per feed, fan-out and throttling.
+ */
+public class RefreshCoordinatorTest {
+
+    private static final String FEED = "http://localhost/feed.xml";
+
+    /**
+     * Records started refreshes instead of downloading
+     */
+    private static class FakeStarter implements RefreshCoordinator.Starter {
+        final ArrayList<NewsUpdatedInterface> started = new ArrayList<>();
+
+        @Override
+        public void start(String feedUrl, NewsUpdatedInterface done) {
+            started.add(done);
+        }
+
+        void finish(int articles) {
+            ArrayList<NewsEntry> news = new ArrayList<>();
+            for (int i = 0; i < articles; i++)
+                news.add(new NewsEntry());
+            started.get(started.size() - 1).onNewsUpdated(news, new IngestResult());
+        }
+    }
+
+    private static class CountingListener implements NewsUpdatedInterface {
+        int calls;
+
+        @Override
+        public void onNewsUpdated(ArrayList<NewsEntry> news, IngestResult result) {
+            calls++;
+        }
+    }
+
+    @Test
+    public void laterCallersJoinTheRunningRefresh() {
+        FakeStarter starter = new FakeStarter();
+        RefreshCoordinator coordinator = new RefreshCoordinator(starter, 0);
+        Object owner = new Object();
+        CountingListener swipe = new CountingListener();
+        CountingListener menu = new CountingListener();
+        CountingListener article = new CountingListener();
+
+        assertEquals(RefreshCoordinator.Outcome.STARTED, coordinator.refresh(FEED, owner, swipe));
+        assertEquals(RefreshCoordinator.Outcome.JOINED, coordinator.refresh(FEED, owner, menu));
+        assertEquals(RefreshCoordinator.Outcome.JOINED, coordinator.refresh(FEED, owner, article));
+        assertEquals(1, starter.started.size());
+        assertTrue(coordinator.isRefreshing(FEED));
+
+        starter.finish(3);
+        assertEquals(1, swipe.calls);
+        assertEquals(1, menu.calls);
+        assertEquals(1, article.calls);
+        assertFalse(coordinator.isRefreshing(FEED));
+    }
+
+    @Test
+    public void feedsRefreshIndependently() {
+        FakeStarter starter = new FakeStarter();
+        RefreshCoordinator coordinator = new RefreshCoordinator(starter, 0);
+        Object owner = new Object();
+        assertEquals(RefreshCoordinator.Outcome.STARTED, coordinator.refresh(FEED, owner, new CountingListener()));
+        assertEquals(RefreshCoordinator.Outcome.STARTED, coordinator.refresh(FEED + "?other", owner, new CountingListener()));
+        assertEquals(2, starter.started.size());
+    }
+
+    @Test
+    public void throttlesRefreshesWithinTheInterval() {
+        FakeStarter starter = new FakeStarter();
+        RefreshCoordinator coordinator = new RefreshCoordinator(starter, 60000);
+        Object owner = new Object();
+        CountingListener listener = new CountingListener();
+
+        coordinator.refresh(FEED, owner, listener);
+        starter.finish(3);
+        assertEquals(RefreshCoordinator.Outcome.THROTTLED, coordinator.refresh(FEED, owner, listener));
+        assertEquals(1, starter.started.size());
+        assertEquals(1, listener.calls);
+    }
+
+    @Test
+    public void failedRefreshCanBeRetriedAtOnce() {
+        FakeStarter starter = new FakeStarter();
+        RefreshCoordinator coordinator = new RefreshCoordinator(starter, 60000);
+        Object owner = new Object();
+
+        coordinator.refresh(FEED, owner, new CountingListener());
+        starter.finish(0);
+        assertEquals(RefreshCoordinator.Outcome.STARTED, coordinator.refresh(FEED, owner, new CountingListener()));
+    }
+
+    @Test
+    public void detachedScreenIsNotCalled() {
+        FakeStarter starter = new FakeStarter();
+        RefreshCoordinator coordinator = new RefreshCoordinator(starter, 0);
+        Object gone = new Object();
+        Object staying = new Object();
+        CountingListener goneListener = new CountingListener();
+        CountingListener stayingListener = new CountingListener();
+
+        coordinator.refresh(FEED, gone, goneListener);
+        coordinator.refresh(FEED, staying, stayingListener);
+        coordinator.removeOwner(gone);
+        starter.finish(1);
+        assertEquals(0, goneListener.calls);
+        assertEquals(1, stayingListener.calls);
+    }
+}
@@ -0,0 +1,248 @@
+package com.mad.cbcnewsreader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.view.View;
+import android.widget.ListAdapter;
+import android.widget.ListView;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmap;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Macro-benchmark of the refresh, ingest and render cycle at growing archive sizes.
+ * Feeds and pictures come from a local SyntheticFeedServer, so it runs offline.
+ * Skipped unless sizes are given, e.g.
+ * ./gradlew testDebugUnitTest --tests '*ScaleBenchmark' -Pbenchmark=1000,10000,100000
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, shadows = ScaleBenchmark.ScaledBitmapShadow.class)
+public class ScaleBenchmark {
+
+    /**
+     * Robolectric's scaled bitmaps have no config, so their size can't be
+     * taken for the picture cache; they keep the config of the source as on a device
+     */
+    @Implements(Bitmap.class)
+    public static class ScaledBitmapShadow extends ShadowBitmap {
+        @Implementation
+        protected static Bitmap createScaledBitmap(Bitmap src, int dstWidth, int dstHeight, boolean filter) {
+            Bitmap scaled = ShadowBitmap.createScaledBitmap(src, dstWidth, dstHeight, filter);
+            scaled.setConfig(src.getConfig());
+            return scaled;
+        }
+    }
+
+    /**
+     * Pictures fetched per run, about what the first screens and the prefetch window need
+     */
+    private static final int PICTURES = 100;
+
+    private SyntheticFeedServer server;
+
+    private Context context;
+
+    private final ArrayList<String> report = new ArrayList<>();
+
+    /**
+     * Measures one stage: wall time, peak heap, bytes allocated by the
+     * benchmark thread and garbage collections. Peak heap is the sum of the
+     * peaks of all heap pools, so it slightly overstates the true peak.
+     */
+    private class Stage {
+        private final String name;
+        private final int articles;
+        private final long startNanos;
+        private final long startAllocated;
+        private final long startGcs;
+
+        Stage(String name, int articles) {
+            this.name = name;
+            this.articles = articles;
+            System.gc();
+            for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans())
+                if (pool.getType() == MemoryType.HEAP)
+                    pool.resetPeakUsage();
+            startGcs = gcCount();
+            startAllocated = allocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        void end(String extra) {
+            long millis = (System.nanoTime() - startNanos) / 1000000;
+            long allocated = allocatedBytes() - startAllocated;
+            long peak = 0;
+            for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans())
+                if (pool.getType() == MemoryType.HEAP)
+                    peak += pool.getPeakUsage().getUsed();
+            report.add(String.format(Locale.US, "%8d  %-12s %9d %10.1f %12.1f %5d  %s",
+                    articles, name, millis, peak / 1048576.0,
+                    allocated < 0 ? -1.0 : allocated / 1048576.0, gcCount() - startGcs, extra));
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private long databaseBytes() {
+        File file = context.getDatabasePath(NewsEntryDB.DB_NAME);
+        long total = file.length();
+        for (String suffix: new String[] { "-journal", "-wal", "-shm" })
+            total += new File(file.getPath() + suffix).length();
+        return total;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeNotNull(System.getProperty("benchmark.sizes"));
+        context = RuntimeEnvironment.application;
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void refreshIngestRender() throws Exception {
+        for (String size: System.getProperty("benchmark.sizes").split(","))
+            run(Integer.parseInt(size.trim()));
+
+        System.out.println(String.format(Locale.US, "%8s  %-12s %9s %10s %12s %5s  %s",
+                "articles", "stage", "wall ms", "peak MB", "alloc MB", "GCs", "notes"));
+        for (String line: report)
+            System.out.println(line);
+    }
+
+    private void run(int articles) throws Exception {
+        context.deleteDatabase(NewsEntryDB.DB_NAME);
+        // Pictures of every run are new to the downloader's cache, which lives on between runs
+        if (server != null)
+            server.stop();
+        server = new SyntheticFeedServer(articles);
+        String feedUrl = server.feedUrl(articles);
+
+        Stage stage = new Stage("fetch+parse", articles);
+        ArrayList<NewsEntry> news = NewsUpdater.parseFeed(feedUrl);
+        stage.end(news.size() + " parsed");
+        assertEquals(articles, news.size());
+
+        NewsEntryDB db = new NewsEntryDB(context, NewsEntryDB.DEFAULT_GUID_FALSE_POSITIVE_RATE,
+                DescriptionCodec.DEFAULT_LEVEL, null);
+        stage = new Stage("ingest", articles);
+        IngestResult result = db.ingestNewsEntries(feedUrl, news);
+        stage.end(result + ", db " + databaseBytes() / 1024 + " KB");
+
+        stage = new Stage("re-ingest", articles);
+        result = db.ingestNewsEntries(feedUrl, NewsUpdater.parseFeed(feedUrl));
+        stage.end(result + ", fetch included");
+        assertEquals(0, result.getModified());
+
+        news = null;
+        stage = new Stage("load", articles);
+        List<NewsEntry> loaded = db.getNewsEntries();
+        stage.end(loaded.size() + " rows");
+
+        ActivityController<MainActivity> controller = Robolectric.buildActivity(MainActivity.class).setup();
+        MainActivity activity = controller.get();
+        ListView list = activity.findViewById(R.id.newslist);
+
+        stage = new Stage("render", articles);
+        // Robolectric otherwise runs the layout posted by setAdapter() before it returns
+        ShadowLooper.pauseMainLooper();
+        activity.loadNews(loaded);
+        ShadowLooper.unPauseMainLooper();
+        list.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        list.layout(0, 0, 1080, 1920);
+        stage.end(list.getChildCount() + " rows on screen");
+
+        // A fling through the whole list, binding every row into recycled views
+        stage = new Stage("scroll", articles);
+        ListAdapter adapter = list.getAdapter();
+        View row = null;
+        for (int i = 0; i < adapter.getCount(); i++)
+            row = adapter.getView(i, row, list);
+        stage.end(adapter.getCount() + " rows bound");
+        controller.pause().stop().destroy();
+
+        // Queued as a refresh does, then downloaded, decoded, stored and published by the pipeline;
+        // allocations on its pools aren't counted, only the benchmark thread's
+        PictureDownloader downloader = PictureDownloader.getInstance();
+        ArrayList<String> urls = new ArrayList<>();
+        for (int i = 0; i < Math.min(PICTURES, loaded.size()); i++)
+            urls.add(loaded.get(i).getPictureUrl());
+        long storeBytes = pictureStoreBytes();
+        stage = new Stage("pictures", articles);
+        for (String url: urls)
+            downloader.EnsureCached(url);
+        downloader.BatchDownload();
+        int shown = awaitPictures(downloader, urls);
+        stage.end(shown + " shown, store +" + (pictureStoreBytes() - storeBytes) / 1024 + " KB");
+        assertEquals(urls.size(), shown);
+    }
+
+    /**
+     * Runs the UI thread until the thumbnails of all pictures are in memory, or for a minute at most
+     * @return Number of pictures in memory
+     */
+    private static int awaitPictures(PictureDownloader downloader, List<String> urls) throws InterruptedException {
+        long deadline = System.nanoTime() + 60 * 1000000000L;
+        ArrayList<String> missing = new ArrayList<>(urls);
+        while (!missing.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            ShadowLooper.idleMainLooper();
+            Iterator<String> it = missing.iterator();
+            while (it.hasNext())
+                if (downloader.GetBitmap(it.next()) != null)
+                    it.remove();
+        }
+        return urls.size() - missing.size();
+    }
+
+    private long pictureStoreBytes() {
+        long total = 0;
+        File[] files = new File(context.getCacheDir(), "pictures").listFiles();
+        if (files != null)
+            for (File file: files)
+                total += file.length();
+        return total;
+    }
+}
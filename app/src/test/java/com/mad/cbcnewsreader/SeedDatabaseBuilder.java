@@ -0,0 +1,84 @@
+package com.mad.cbcnewsreader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds the seed database shipped in the assets from a feed snapshot.
+ * The snapshot goes through the same parsing and ingest as a refresh, so the
+ * schema, fingerprints, list columns and unread counters are the app's own.
+ * The articles belong to their own feed, so the first refresh removes them.
+ * Run by the generateSeedDatabase task of app/build.gradle, skipped otherwise.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SeedDatabaseBuilder {
+
+    @Test
+    public void build() throws Exception {
+        String feed = System.getProperty("seed.feed");
+        String output = System.getProperty("seed.output");
+        Assume.assumeNotNull(feed, output);
+
+        Context context = RuntimeEnvironment.application;
+        context.deleteDatabase(NewsEntryDB.DB_NAME);
+        ArrayList<NewsEntry> news = NewsUpdater.parseFeed(new File(feed).toURI().toString());
+        assertFalse("Feed snapshot has no articles: " + feed, news.isEmpty());
+
+        // Built from scratch, not from the seed being replaced
+        NewsEntryDB db = new NewsEntryDB(context, NewsEntryDB.DEFAULT_GUID_FALSE_POSITIVE_RATE,
+                DescriptionCodec.DEFAULT_LEVEL, null);
+        IngestResult result = db.ingestNewsEntries(NewsEntryDB.SEED_FEED_URL, news);
+        assertTrue(result.getInserted() > 0);
+        List<NewsEntry> loaded = db.getNewsEntries();
+        assertEquals(result.getInserted(), loaded.size());
+        db.close();
+
+        // Drop free pages left by the ingest, the file ships in every APK.
+        // Rollback journal, so the single file is the whole database.
+        File file = context.getDatabasePath(NewsEntryDB.DB_NAME);
+        SQLiteDatabase sqlite = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        Cursor mode = sqlite.rawQuery("PRAGMA journal_mode = DELETE", null);
+        assertTrue(mode.moveToFirst());
+        assertEquals("delete", mode.getString(0).toLowerCase(Locale.US));
+        mode.close();
+        sqlite.execSQL("VACUUM");
+        sqlite.close();
+
+        File target = new File(output);
+        target.getParentFile().mkdirs();
+        InputStream input = new FileInputStream(file);
+        try {
+            OutputStream out = new FileOutputStream(target);
+            try {
+                byte[] data = new byte[64 * 1024];
+                int count;
+                while ((count = input.read(data)) != -1)
+                    out.write(data, 0, count);
+            } finally {
+                out.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.mad.cbcnewsreader;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the seed database in the assets: it's installed by whichever
+ * read comes first, it's up to date with the feed snapshot in app/seed, and
+ * the first refresh replaces its placeholder articles.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SeedDatabaseTest {
+
+    private Context context;
+
+    private ArrayList<NewsEntry> snapshot;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        context.deleteDatabase(NewsEntryDB.DB_NAME);
+        File feed = new File(System.getProperty("seed.feed", "seed/feed.xml"));
+        snapshot = NewsUpdater.parseFeed(feed.toURI().toString());
+        assertFalse(snapshot.isEmpty());
+    }
+
+    @Test
+    public void firstReadInstallsSeed() {
+        // Any read may come first, not only the list load
+        NewsEntryDB db = new NewsEntryDB(context);
+        assertFalse(db.getCategories().isEmpty());
+        List<NewsEntry> news = db.getNewsEntries();
+        assertEquals(snapshot.size(), news.size());
+        assertEquals(snapshot.size(), db.getFeedUnreadCount(NewsEntryDB.SEED_FEED_URL));
+        assertEquals(snapshot.size(), db.getUnreadCount());
+    }
+
+    @Test
+    public void seedMatchesSnapshot() {
+        // Regenerate with ./gradlew generateSeedDatabase if this fails
+        NewsEntryDB db = new NewsEntryDB(context);
+        IngestResult result = db.ingestNewsEntries(NewsEntryDB.SEED_FEED_URL, snapshot);
+        assertEquals(0, result.getModified());
+        assertEquals(snapshot.size(), result.getUnchanged());
+    }
+
+    @Test
+    public void firstRefreshRemovesSeed() {
+        NewsEntryDB db = new NewsEntryDB(context);
+        assertEquals(snapshot.size(), db.getNewsEntries().size());
+
+        List<NewsEntry> news = Arrays.asList(
+                new NewsEntry("Budget tabled", "https://www.cbc.ca/news/politics/budget-1.5000001",
+                        "1.5000001", "Fri, 19 Apr 2019 13:00:00 EDT", "CBC News", "Politics", "<p>Budget</p>"),
+                new NewsEntry("Playoffs open", "https://www.cbc.ca/sports/playoffs-1.5000002",
+                        "1.5000002", "Fri, 19 Apr 2019 13:05:00 EDT", "CBC Sports", "Sports", "<p>Playoffs</p>"));
+        IngestResult result = db.ingestNewsEntries(NewsUpdater.FEED_URL, news);
+        assertEquals(2, result.getInserted());
+
+        List<NewsEntry> stored = db.getNewsEntries();
+        assertEquals(2, stored.size());
+        for (NewsEntry entry: stored)
+            assertFalse(entry.getGuid().startsWith("seed/"));
+        assertEquals(0, db.getFeedUnreadCount(NewsEntryDB.SEED_FEED_URL));
+        assertEquals(2, db.getUnreadCount());
+
+        // Sections only the seed had are gone, the rest count real articles only
+        Map<String, Integer> unread = new HashMap<>();
+        for (Category category: db.getCategories())
+            unread.put(category.getName(), category.getUnreadCount());
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("Politics", 1);
+        expected.put("Sports", 1);
+        assertEquals(expected, unread);
+
+        assertEquals(2, db.ingestNewsEntries(NewsUpdater.FEED_URL, news).getUnchanged());
+        assertEquals(2, db.getUnreadCount());
+    }
+
+    @Test
+    public void failedRefreshKeepsSeed() {
+        NewsEntryDB db = new NewsEntryDB(context);
+        db.ingestNewsEntries(NewsUpdater.FEED_URL, new ArrayList<NewsEntry>());
+        assertEquals(snapshot.size(), db.getNewsEntries().size());
+        assertEquals(snapshot.size(), db.getUnreadCount());
+    }
+
+    @Test
+    public void existingDatabaseIsKept() {
+        NewsEntryDB empty = new NewsEntryDB(context, NewsEntryDB.DEFAULT_GUID_FALSE_POSITIVE_RATE,
+                DescriptionCodec.DEFAULT_LEVEL, null);
+        assertTrue(empty.getNewsEntries().isEmpty());
+        empty.close();
+
+        NewsEntryDB db = new NewsEntryDB(context);
+        assertTrue(db.getNewsEntries().isEmpty());
+    }
+}
@@ -0,0 +1,194 @@
+package com.mad.cbcnewsreader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Local stand-in for the CBC feed and picture servers, so tests and benchmarks run offline.
+ * /feed.xml?n=N serves an RSS feed with N generated articles, /img/I.jpg a generated picture.
+ * Content only depends on the article number and the server's picture seed,
+ * so repeated fetches are identical.
+ */
+public class SyntheticFeedServer {
+
+    private static final String[] CATEGORIES = {
+            "World", "Canada", "Politics", "Business", "Health", "Arts", "Technology & Science",
+            "Sports", "Toronto", "Montreal", "British Columbia", "Opinion"
+    };
+
+    private static final String[] WORDS = {
+            "government", "report", "city", "says", "new", "police", "plan", "federal", "court",
+            "minister", "health", "election", "study", "storm", "market", "school", "workers", "deal",
+            "budget", "fire", "families", "climate", "housing", "province", "season", "team"
+    };
+
+    private static final int PICTURE_WIDTH = 460;
+
+    private static final int PICTURE_HEIGHT = 259;
+
+    private static final int PICTURE_BLOCKS = 8;
+
+    private final HttpServer server;
+
+    /**
+     * Mixed into picture content, so pictures of different servers aren't shared by a content-keyed cache
+     */
+    private final long pictureSeed;
+
+    /**
+     * Starts the server on a free loopback port
+     * @param pictureSeed Seed of picture content
+     */
+    public SyntheticFeedServer(long pictureSeed) throws IOException {
+        this.pictureSeed = pictureSeed;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/feed.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serveFeed(exchange);
+            }
+        });
+        server.createContext("/img/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                servePicture(exchange);
+            }
+        });
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String feedUrl(int articles) {
+        return baseUrl() + "/feed.xml?n=" + articles;
+    }
+
+    public String pictureUrl(int article) {
+        return baseUrl() + "/img/" + article + ".jpg";
+    }
+
+    private void serveFeed(HttpExchange exchange) throws IOException {
+        int articles = Integer.parseInt(exchange.getRequestURI().getQuery().substring("n=".length()));
+        exchange.getResponseHeaders().set("Content-Type", "application/rss+xml; charset=UTF-8");
+        exchange.sendResponseHeaders(200, 0);
+        Writer output = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), "UTF-8"));
+        try {
+            writeFeed(output, articles);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void writeFeed(Writer output, int articles) throws IOException {
+        output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rss version=\"2.0\"><channel>"
+                + "<title>CBC | Top Stories News</title>\n");
+        for (int i = 0; i < articles; i++) {
+            NewsEntry entry = article(i, baseUrl());
+            output.write("<item><title><![CDATA[" + entry.getTitle() + "]]></title>");
+            output.write("<link>" + entry.getLink() + "</link>");
+            output.write("<guid isPermaLink=\"false\">" + entry.getGuid() + "</guid>");
+            output.write("<pubDate>" + entry.getPubDate() + "</pubDate>");
+            output.write("<author>" + entry.getAuthor() + "</author>");
+            output.write("<category>" + entry.getCategory().replace("&", "&amp;") + "</category>");
+            output.write("<description><![CDATA[" + entry.getDescription() + "]]></description></item>\n");
+        }
+        output.write("</channel></rss>\n");
+    }
+
+    /**
+     * Builds article i of the synthetic feed, the same on every call
+     * @param i Article number, 0 is the newest
+     * @param baseUrl Server address used in picture URLs
+     * @return Article with all fields set
+     */
+    static NewsEntry article(int i, String baseUrl) {
+        SimpleDateFormat format = new SimpleDateFormat("E, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("America/Toronto"));
+        long newest = 1555000000000L;
+        Random random = new Random(i);
+        String title = sentence(random, 8);
+        String description = "<img src='" + baseUrl + "/img/" + i + ".jpg' alt='' width='460' height='259'"
+                + " title=''/><p>" + sentence(random, 40) + "</p>";
+        return new NewsEntry(title, "https://www.cbc.ca/news/story-" + i, Integer.toString(1500000 + i),
+                format.format(new Date(newest - i * 60000L)), "CBC News", CATEGORIES[i % CATEGORIES.length],
+                description);
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0)
+                text.append(' ');
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.setCharAt(0, Character.toUpperCase(text.charAt(0)));
+        return text.toString();
+    }
+
+    private void servePicture(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        int article = Integer.parseInt(path.substring("/img/".length(), path.length() - ".jpg".length()));
+        byte[] data = picture(article);
+        exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+        exchange.sendResponseHeaders(200, data.length);
+        OutputStream output = exchange.getResponseBody();
+        try {
+            output.write(data);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Encodes a real JPEG of news picture size: coloured blocks with some noise,
+     * so it decodes anywhere and compresses to a realistic size
+     * @param article Article number
+     * @return JPEG bytes
+     */
+    private byte[] picture(int article) throws IOException {
+        Random random = new Random(pictureSeed * 1000003 + article);
+        BufferedImage image = new BufferedImage(PICTURE_WIDTH, PICTURE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        int blockWidth = PICTURE_WIDTH / PICTURE_BLOCKS + 1;
+        int blockHeight = PICTURE_HEIGHT / PICTURE_BLOCKS + 1;
+        for (int x = 0; x < PICTURE_BLOCKS; x++) {
+            for (int y = 0; y < PICTURE_BLOCKS; y++) {
+                graphics.setColor(new Color(random.nextInt(0x1000000)));
+                graphics.fillRect(x * blockWidth, y * blockHeight, blockWidth, blockHeight);
+            }
+        }
+        graphics.dispose();
+        for (int i = 0; i < PICTURE_WIDTH * PICTURE_HEIGHT / 16; i++)
+            image.setRGB(random.nextInt(PICTURE_WIDTH), random.nextInt(PICTURE_HEIGHT), random.nextInt(0x1000000));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", output);
+        return output.toByteArray();
+    }
+}